@@ -0,0 +1,74 @@
+package app.benchmarks;
+
+import app.dto.CompletionDTO;
+import app.search.CompletionIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Typeahead over 100k distinct titles (plus instructors and categories), the size the memory budget is set for
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutocompleteBenchmark {
+    private static final String[] WORDS = {"yoga", "dans", "salsa", "tango", "madlavning", "keramik", "maling", "kor",
+            "guitar", "klaver", "løb", "svømning", "pilates", "meditation", "for", "begyndere", "øvede", "weekend",
+            "aften", "morgen", "workshop", "kursus", "intro", "åben", "familie", "børn", "seniorer", "Århus", "Aalborg"};
+    private static final String[] CATEGORIES = {"Yoga", "Dance", "Cooking", "Music", "Art", "Sport"};
+
+    @Param({"100000"})
+    int titles;
+
+    private CompletionIndex index;
+    private CompletionIndex.Builder builder;
+    private String[] prefixes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        builder = new CompletionIndex.Builder();
+        for (int i = 0; i < titles; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 2 + random.nextInt(3); w > 0; w--) {
+                title.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            title.append(i); // distinct
+            long weight = 1 + random.nextInt(200);
+            builder.add(title.toString(), CompletionIndex.Type.TITLE, weight);
+            builder.add("Instructor " + random.nextInt(2000), CompletionIndex.Type.INSTRUCTOR, weight);
+            builder.add(CATEGORIES[random.nextInt(CATEGORIES.length)], CompletionIndex.Type.CATEGORY, weight);
+        }
+        index = builder.build(Long.MAX_VALUE);
+        prefixes = new String[]{"y", "yo", "sal", "madlav", "begyndere ", "aarh", "instructor 12", "zzz"};
+    }
+
+    // Mostly huge ranges ("y" matches a fifth of all keys), where the segment tree matters
+    @Benchmark
+    public List<CompletionDTO> completeTop8() {
+        return index.complete(prefixes[ThreadLocalRandom.current().nextInt(prefixes.length)], 8);
+    }
+
+    @Benchmark
+    public List<CompletionDTO> completeOneLetterTop20() {
+        return index.complete("m", 20);
+    }
+
+    // What a catalogue change costs in the background
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CompletionIndex rebuild() {
+        return builder.build(Long.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%n%d completions, %d keys, ~%d MB%n", index.getCompletions(), index.getKeys(),
+                index.getEstimatedBytes() / (1024 * 1024));
+    }
+}
@@ -0,0 +1,36 @@
+package app.benchmarks;
+
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// What one login (checkpw) or registration (hashpw) costs at each work factor, see PasswordHasher
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BCryptBenchmark {
+
+    @Param({"10", "11", "12"})
+    int cost;
+
+    private String hash;
+
+    @Setup
+    public void setup() {
+        hash = BCrypt.hashpw("benchmark-password", BCrypt.gensalt(cost));
+    }
+
+    @Benchmark
+    public String hash() {
+        return BCrypt.hashpw("benchmark-password", BCrypt.gensalt(cost));
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return BCrypt.checkpw("benchmark-password", hash);
+    }
+}
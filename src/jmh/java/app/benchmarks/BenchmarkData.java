@@ -0,0 +1,53 @@
+package app.benchmarks;
+
+import app.model.Category;
+import app.model.Event;
+import app.model.Location;
+import app.model.Role;
+import app.model.User;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Entities built in memory, the benchmarks never need a database
+public class BenchmarkData {
+    private static final Location[] LOCATIONS = Location.values();
+    private static final String[] STATUSES = {"Upcoming", "Cancelled", "Done"};
+
+    public static List<Event> events(int count) {
+        List<Category> categories = List.of(new Category(1, "Yoga"), new Category(2, "Dance"), new Category(3, "Cooking"));
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<Event> events = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Event event = new Event("Event " + i, "Description of event number " + i + " with a bit of text",
+                    start.plusDays(i % 365), LocalTime.of(8 + i % 12, 0), 60 + i % 90, 20 + i % 80,
+                    LOCATIONS[i % LOCATIONS.length], "Instructor " + i % 40, 100 + i % 300,
+                    STATUSES[i % STATUSES.length], categories.get(i % categories.size()));
+            event.setEventId(i);
+            events.add(event);
+        }
+        return events;
+    }
+
+    // new User(name, password) hashes the password, this one doesn't
+    public static List<User> users(int count) {
+        Role userRole = new Role("user");
+        Role adminRole = new Role("admin");
+        List<User> users = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            User user = new User();
+            user.setId(i);
+            user.setName("user" + i);
+            user.setEmail("user" + i + "@mail.dk");
+            user.setPhoneNumber(20000000 + i);
+            user.getRoles().add(userRole);
+            if (i % 10 == 0) {
+                user.getRoles().add(adminRole);
+            }
+            users.add(user);
+        }
+        return users;
+    }
+}
@@ -0,0 +1,80 @@
+package app.benchmarks;
+
+import app.dao.DAO;
+import app.model.Event;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The generic in-memory DAO<T> with events in it, indexed by category
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryDAOBenchmark {
+
+    @Param({"1000", "10000"})
+    int size;
+
+    private EventMemoryDAO dao;
+    private List<Event> events;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        dao = new EventMemoryDAO();
+        events = BenchmarkData.events(size);
+        events.forEach(dao::create);
+    }
+
+    @Benchmark
+    public Event getById() {
+        return dao.getById(ThreadLocalRandom.current().nextInt(1, size + 1));
+    }
+
+    @Benchmark
+    public Event update() {
+        return dao.update(events.get(ThreadLocalRandom.current().nextInt(size)));
+    }
+
+    @Benchmark
+    public Event deleteAndCreate() {
+        Event event = events.get(ThreadLocalRandom.current().nextInt(size));
+        dao.delete(event.getEventId());
+        return dao.create(event);
+    }
+
+    // Readers on several threads, spread over the lock stripes
+    @Benchmark
+    @Threads(4)
+    public Event getByIdContended() {
+        return dao.getById(ThreadLocalRandom.current().nextInt(1, size + 1));
+    }
+
+    @Benchmark
+    public int findByCategory() {
+        return dao.byCategory.find(ThreadLocalRandom.current().nextInt(1, 4)).size();
+    }
+
+    @Benchmark
+    public int getAll() {
+        return dao.getAll().size();
+    }
+
+    static class EventMemoryDAO extends DAO<Event> {
+        final Index<Integer> byCategory = addIndex("category", event -> event.getCategory().getCategoryId());
+
+        @Override
+        protected int getId(Event entity) {
+            return entity.getEventId();
+        }
+
+        @Override
+        protected void setId(Event entity, int id) {
+            entity.setEventId(id);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package app.benchmarks;
+
+import app.controllers.SecurityController;
+import app.dto.UserDTO;
+import app.exceptions.NotAuthorizedException;
+import app.security.TokenVerifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Token creation and verification (cached and uncached) plus the role check done by the access manager
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityBenchmark {
+
+    private SecurityController securityController;
+    private UserDTO user;
+    private String token;
+    private Set<String> allowedRoles;
+    private Set<String> otherRoles;
+
+    @Setup
+    public void setup() {
+        securityController = new SecurityController(null);
+        user = new UserDTO("benchmark", Set.of("user", "instructor"));
+        token = securityController.createToken(user);
+        securityController.verifyToken(token); // put it in the cache
+        allowedRoles = Set.of("INSTRUCTOR", "ADMIN");
+        otherRoles = Set.of("ADMIN");
+    }
+
+    @Benchmark
+    public String createToken() {
+        return securityController.createToken(user);
+    }
+
+    @Benchmark
+    public UserDTO verifyTokenCached() {
+        return securityController.verifyToken(token);
+    }
+
+    @Benchmark
+    public UserDTO verifyTokenUncached() throws NotAuthorizedException {
+        return TokenVerifier.getInstance().verifyUncached(token);
+    }
+
+    @Benchmark
+    public boolean authorizeAllowed() {
+        return securityController.authorize(user, allowedRoles);
+    }
+
+    @Benchmark
+    public boolean authorizeDenied() {
+        return securityController.authorize(user, otherRoles);
+    }
+}
@@ -0,0 +1,68 @@
+package app.benchmarks;
+
+import app.dto.EventDTO;
+import app.dto.UserDTO;
+import app.model.Event;
+import app.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.json.JavalinJackson;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Entity -> DTO mapping and JSON serialization with the same ObjectMapper Javalin uses for ctx.json()
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int size;
+
+    private List<Event> events;
+    private List<EventDTO> eventDTOs;
+    private List<User> users;
+    private List<UserDTO> userDTOs;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() {
+        events = BenchmarkData.events(size);
+        eventDTOs = events.stream().map(EventDTO::new).collect(Collectors.toList());
+        users = BenchmarkData.users(size);
+        userDTOs = UserDTO.toUserDTOList(users);
+        objectMapper = JavalinJackson.defaultMapper();
+    }
+
+    @Benchmark
+    public List<EventDTO> eventDTOConstruction() {
+        return events.stream().map(EventDTO::new).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<UserDTO> userDTOConstruction() {
+        return UserDTO.toUserDTOList(users);
+    }
+
+    @Benchmark
+    public byte[] eventListSerialization() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(eventDTOs);
+    }
+
+    @Benchmark
+    public byte[] userListSerialization() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(userDTOs);
+    }
+
+    // What GET /api/events does per request: map and serialize
+    @Benchmark
+    public byte[] eventListEndToEnd() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(events.stream().map(EventDTO::new).collect(Collectors.toList()));
+    }
+}
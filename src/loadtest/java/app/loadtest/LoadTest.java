@@ -0,0 +1,245 @@
+package app.loadtest;
+
+import app.Main;
+import app.config.ApplicationConfig;
+import app.config.HibernateConfig;
+import app.metrics.LatencyHistogram;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+
+End-to-end load test: starts the real server on a Testcontainers Postgres, seeds it, then runs a mix of
+catalogue browsing, logins and a registration storm on one small event from `concurrency` clients.
+Prints throughput and p50/p99/p999 per route and writes the same numbers to `output` as JSON.
+
+mvn -Ploadtest verify -Dloadtest.args="concurrency=200 duration=60"
+
+Options (key=value): port, events, users, concurrency, warmup and duration (seconds), hotCapacity,
+mix (browse:80,login:5,register:15), output.
+
+*/
+public class LoadTest {
+    private static final ObjectMapper om = new ObjectMapper();
+
+    private final Map<String, String> options;
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Map<String, RouteStats> stats = new ConcurrentHashMap<>();
+    private final List<String> tokens = new ArrayList<>();
+    private Seeder.Seed seed;
+    private volatile boolean measuring;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+        this.baseUrl = "http://localhost:" + getInt("port", 7071) + "/api";
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length == 2) {
+                options.put(keyValue[0], keyValue[1]);
+            }
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        HibernateConfig.setTestMode(true); // jdbc:tc: Postgres, must happen before Main touches the EntityManagerFactory
+        System.out.println("Seeding...");
+        seed = Seeder.seed(HibernateConfig.getEntityManagerFactory(), getInt("events", 1000), getInt("users", 500), getInt("hotCapacity", 50));
+        Main.startServer(getInt("port", 7071));
+        loginUsers(Math.min(seed.userNames().size(), 200));
+
+        int[] mix = parseMix(options.getOrDefault("mix", "browse:80,login:5,register:15"));
+        int concurrency = getInt("concurrency", 64);
+        int warmup = getInt("warmup", 10);
+        int duration = getInt("duration", 60);
+        System.out.println("Running " + concurrency + " clients: " + warmup + "s warmup, " + duration + "s measured"
+                + (ApplicationConfig.isVirtualThreadMode() ? " (virtual threads)" : ""));
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup + duration);
+        ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < concurrency; i++) {
+            clients.submit(() -> {
+                while (System.nanoTime() < end) {
+                    runOne(mix);
+                }
+            });
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+        measuring = true;
+        long measureStart = System.nanoTime();
+        clients.shutdown();
+        clients.awaitTermination(duration + 60, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+        report(seconds, concurrency);
+        Main.closeServer();
+    }
+
+    private void runOne(int[] mix) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int pick = random.nextInt(mix[0] + mix[1] + mix[2]);
+        if (pick < mix[0]) {
+            browse(random);
+        } else if (pick < mix[0] + mix[1]) {
+            int user = random.nextInt(seed.userNames().size());
+            send("POST /auth/login", post("/auth/login", loginBody(seed.userNames().get(user)), null));
+        } else {
+            // Most clients fight over the hot event, some give their seat back so the storm keeps going
+            int user = random.nextInt(tokens.size());
+            String body = "{\"id\":" + seed.userIds().get(user) + "}";
+            if (random.nextInt(4) == 0) {
+                send("POST /events/removeuserevent/{id}", post("/events/removeuserevent/" + seed.hotEventId(), body, tokens.get(user)));
+            } else {
+                send("POST /events/eventregistration/{id}", post("/events/eventregistration/" + seed.hotEventId(), body, tokens.get(user)));
+            }
+        }
+    }
+
+    private void browse(ThreadLocalRandom random) {
+        int pick = random.nextInt(10);
+        if (pick < 5) {
+            send("GET /events/{id}", get("/events/" + seed.eventIds().get(random.nextInt(seed.eventIds().size()))));
+        } else if (pick < 8) {
+            send("GET /events?limit=50", get("/events?limit=50"));
+        } else {
+            send("GET /events?category", get("/events?limit=50&category=" + seed.categoryIds().get(random.nextInt(seed.categoryIds().size()))));
+        }
+    }
+
+    private void send(String route, HttpRequest request) {
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (measuring) {
+            RouteStats routeStats = stats.computeIfAbsent(route, r -> new RouteStats());
+            routeStats.latency.recordNanos(System.nanoTime() - start);
+            routeStats.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    private void loginUsers(int count) throws IOException, InterruptedException {
+        for (int i = 0; i < count; i++) {
+            HttpResponse<String> response = client.send(post("/auth/login", loginBody(seed.userNames().get(i)), null),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonNode token = om.readTree(response.body()).get("token");
+            if (response.statusCode() != 200 || token == null) {
+                throw new IllegalStateException("Login failed for " + seed.userNames().get(i) + ": " + response.body());
+            }
+            tokens.add(token.asText());
+        }
+    }
+
+    private void report(double seconds, int concurrency) throws IOException {
+        ObjectNode result = om.createObjectNode();
+        result.put("concurrency", concurrency);
+        result.put("seconds", seconds);
+        result.put("virtualThreads", ApplicationConfig.isVirtualThreadMode());
+        ArrayNode routes = result.putArray("routes");
+
+        System.out.printf("%n%-38s %9s %9s %9s %9s %9s %9s  %s%n", "route", "count", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "statuses");
+        for (Map.Entry<String, RouteStats> entry : new TreeMap<>(stats).entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            Map<Integer, Long> statuses = new TreeMap<>();
+            entry.getValue().statuses.forEach((status, count) -> statuses.put(status, count.sum()));
+            System.out.printf("%-38s %9d %9.1f %9.2f %9.2f %9.2f %9.2f  %s%n", entry.getKey(), latency.getCount(),
+                    latency.getCount() / seconds, latency.getPercentile(0.5) / 1000.0, latency.getPercentile(0.99) / 1000.0,
+                    latency.getPercentile(0.999) / 1000.0, latency.getMax() / 1000.0, statuses);
+
+            ObjectNode route = routes.addObject();
+            route.put("route", entry.getKey());
+            route.put("count", latency.getCount());
+            route.put("throughput", latency.getCount() / seconds);
+            route.put("p50Micros", latency.getPercentile(0.5));
+            route.put("p99Micros", latency.getPercentile(0.99));
+            route.put("p999Micros", latency.getPercentile(0.999));
+            route.put("maxMicros", latency.getMax());
+            ObjectNode statusNode = route.putObject("statuses");
+            statuses.forEach((status, count) -> statusNode.put(String.valueOf(status), count));
+        }
+
+        Path output = Path.of(options.getOrDefault("output", "target/loadtest-result.json"));
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        om.writerWithDefaultPrettyPrinter().writeValue(output.toFile(), result);
+        System.out.println("\nResult written to " + output.toAbsolutePath());
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private HttpRequest post(String path, String body, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private static String loginBody(String name) {
+        return "{\"name\":\"" + name + "\",\"password\":\"" + Seeder.PASSWORD + "\"}";
+    }
+
+    private static int[] parseMix(String mix) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String part : mix.split(",")) {
+            String[] keyValue = part.split(":");
+            weights.put(keyValue[0].trim(), Integer.parseInt(keyValue[1].trim()));
+        }
+        return new int[]{weights.getOrDefault("browse", 0), weights.getOrDefault("login", 0), weights.getOrDefault("register", 0)};
+    }
+
+    private int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static class RouteStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,121 @@
+package app.loadtest;
+
+import app.model.Category;
+import app.model.Event;
+import app.model.Location;
+import app.model.Role;
+import app.model.User;
+import app.security.PasswordHasher;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+// Fills the test database straight through JPA, much faster than going through the API
+public class Seeder {
+    public static final String PASSWORD = "loadtest";
+    public static final String ADMIN_NAME = "loadtest-admin";
+    private static final int BATCH_SIZE = 500;
+    private static final String[] CATEGORIES = {"Yoga", "Dance", "Cooking", "Running", "Painting"};
+
+    public record Seed(List<Integer> eventIds, List<Integer> categoryIds, List<Integer> userIds, List<String> userNames, int hotEventId) {
+    }
+
+    public static Seed seed(EntityManagerFactory emf, int eventCount, int userCount, int hotCapacity) {
+        // One hash for everybody, hashing every user would make seeding take minutes
+        String passwordHash = PasswordHasher.getInstance().hash(PASSWORD);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Role userRole = findOrCreateRole(em, "user");
+            Role adminRole = findOrCreateRole(em, "admin");
+            List<Category> categories = new ArrayList<>();
+            for (String name : CATEGORIES) {
+                Category category = new Category();
+                category.setCategoryName(name);
+                em.persist(category);
+                categories.add(category);
+            }
+
+            User admin = newUser(ADMIN_NAME, passwordHash);
+            admin.getRoles().add(userRole);
+            admin.getRoles().add(adminRole);
+            em.persist(admin);
+            em.getTransaction().commit();
+
+            List<Integer> categoryIds = categories.stream().map(Category::getCategoryId).toList();
+            List<Integer> eventIds = new ArrayList<>(eventCount + 1);
+            List<Integer> userIds = new ArrayList<>(userCount);
+            List<String> userNames = new ArrayList<>(userCount);
+
+            Location[] locations = Location.values();
+            LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
+            List<Event> batch = new ArrayList<>();
+            em.getTransaction().begin();
+            for (int i = 0; i < eventCount; i++) {
+                Event event = new Event("Load test event " + i, "Seeded by the load test", start.plusDays(i % 365),
+                        LocalTime.of(8 + i % 12, 0), 60, 1000, locations[i % locations.length], "Instructor " + i % 50,
+                        100, "Upcoming", em.getReference(Category.class, categoryIds.get(i % categoryIds.size())));
+                em.persist(event);
+                batch.add(event);
+                if (batch.size() == BATCH_SIZE) {
+                    flush(em, batch, eventIds, Event::getEventId);
+                }
+            }
+            Event hotEvent = new Event("Hot event", "Everybody wants in", start.plusDays(1), LocalTime.of(18, 0), 60, hotCapacity,
+                    locations[0], "Instructor 0", 100, "Upcoming", em.getReference(Category.class, categoryIds.get(0)));
+            em.persist(hotEvent);
+            batch.add(hotEvent);
+            flush(em, batch, eventIds, Event::getEventId);
+            int hotEventId = eventIds.remove(eventIds.size() - 1);
+
+            List<User> users = new ArrayList<>();
+            for (int i = 0; i < userCount; i++) {
+                User user = newUser("loadtest-user-" + i, passwordHash);
+                user.getRoles().add(em.getReference(Role.class, "user"));
+                em.persist(user);
+                users.add(user);
+                userNames.add(user.getName());
+                if (users.size() == BATCH_SIZE) {
+                    flush(em, users, userIds, User::getId);
+                }
+            }
+            flush(em, users, userIds, User::getId);
+            em.getTransaction().commit();
+            return new Seed(eventIds, categoryIds, userIds, userNames, hotEventId);
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private static <T> void flush(EntityManager em, List<T> batch, List<Integer> ids, ToIntFunction<T> idOf) {
+        em.flush();
+        batch.forEach(entity -> ids.add(idOf.applyAsInt(entity)));
+        batch.clear();
+        em.clear();
+    }
+
+    private static User newUser(String name, String passwordHash) {
+        User user = new User();
+        user.setName(name);
+        user.setPassword(passwordHash);
+        user.setEmail(name + "@loadtest.dk");
+        return user;
+    }
+
+    private static Role findOrCreateRole(EntityManager em, String name) {
+        Role role = em.find(Role.class, name);
+        if (role == null) {
+            role = new Role(name);
+            em.persist(role);
+        }
+        return role;
+    }
+}
@@ -1,10 +1,17 @@
 package app;
 
+import app.catalogue.CatalogueSnapshot;
+import app.catalogue.EventFeed;
+import app.catalogue.EventTimeline;
+import app.catalogue.FacetIndex;
 import app.config.ApplicationConfig;
 import app.config.HibernateConfig;
 import app.controllers.*;
 import app.dao.EventDAO;
 import app.dao.UserDAO;
+import app.search.Autocomplete;
+import app.search.EventSearch;
+import app.security.PasswordHasher;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.apibuilder.EndpointGroup;
 import io.javalin.security.RouteRole;
@@ -23,6 +30,7 @@ public class Main {
 
     private static UserDAO userDAO= new UserDAO(emf);
     private static IUserController userController= new UserController(userDAO);
+    private static IAdminController adminController= new AdminController();
     private static ObjectMapper om = new ObjectMapper();
 
     public static void main(String[] args) {
@@ -35,15 +43,20 @@ public class Main {
 
         ObjectMapper om = new ObjectMapper();
         EntityManagerFactory emf = HibernateConfig.getEntityManagerFactory();
+        PasswordHasher.getInstance(); // calibrates the BCrypt cost now instead of on the first login
+        eventDAO.alignIdSequence(); // before the first insert
+        userDAO.alignIdSequence();
         ApplicationConfig applicationConfig = ApplicationConfig.getInstance();
         applicationConfig
                 .initiateServer()
-                .startServer(7070)
+                .startServer(port)
                 .setExceptionHandling()
                 .setupAccessManager()
                 .configureCors()
+                .setupUnitOfWork(emf)
                 .setRoute(getSecurityRoutes())
                 .setRoute(getSecuredRoutes())
+                .setRoute(getAdminRoutes())
                 .setRoute(() -> {
 
                     getUserRoutes();
@@ -51,22 +64,43 @@ public class Main {
 
                 })
                 .checkSecurityRoles();
+        eventDAO.startRegistrationReconciliation(getReconcilePeriodSeconds());
+        CatalogueSnapshot.start(eventDAO);
+        EventFeed eventFeed = EventFeed.start(eventDAO);
+        EventSearch.start(eventDAO, eventFeed);
+        Autocomplete.start(eventDAO, eventFeed);
+        FacetIndex.start(eventFeed);
+        EventTimeline.start(eventFeed);
+    }
+
+    private static long getReconcilePeriodSeconds() {
+        String value = System.getenv("REGISTRATION_RECONCILE_SECONDS");
+        return value != null ? Long.parseLong(value) : 300;
     }
 
     public static void getRoutes(){
-        before(securityController.authenticate());
         path("/events", () -> {
             path("/", () -> {
                 before(securityController.authenticate());
                 get("/", eventController.getAllEvents(), Role.ANYONE);
+                get("export", eventController.exportEvents(), Role.ANYONE); // before {id}, or {id} would match it
+                get("upcoming", eventController.getUpcomingEvents(), Role.ANYONE);
+                get("between", eventController.getEventsBetween(), Role.ANYONE);
+                get("filter", eventController.filterEvents(), Role.ANYONE);
+                get("search", eventController.searchEvents(), Role.ANYONE);
+                get("autocomplete", eventController.autocomplete(), Role.ANYONE);
+                get("registrationcounts", eventController.getRegistrationCounts(), Role.INSTRUCTOR, Role.ADMIN);
                 get("{id}", eventController.getEventById(), Role.ANYONE);
                 post("create", eventController.createEvent(), Role.INSTRUCTOR, Role.ADMIN);
+                post("import", eventController.importEvents(), Role.INSTRUCTOR, Role.ADMIN);
                 put("update/{id}", eventController.updateEvent(), Role.INSTRUCTOR, Role.ADMIN);
                 delete("delete/{id}", eventController.deleteEvent(), Role.INSTRUCTOR, Role.ADMIN);
                 get("allregistrations/{event_id}", eventController.getAllRegistrationsForEvent(), Role.INSTRUCTOR, Role.ADMIN);
+                get("exportregistrations/{event_id}", eventController.exportRegistrationsForEvent(), Role.INSTRUCTOR, Role.ADMIN);
                 get("registration/{event_id}", eventController.getRegistrationById(), Role.INSTRUCTOR, Role.ADMIN);
                 put("registrations/{event_id}", eventController.getRegistrationById(), Role.INSTRUCTOR, Role.ADMIN);
                 post("eventregistration/{event_id}", eventController.registerUserForEvent(), Role.USER, Role.INSTRUCTOR, Role.ADMIN);
+                post("waitlistregistration/{event_id}", eventController.registerUserOrWaitlist(), Role.USER, Role.INSTRUCTOR, Role.ADMIN);
                 post("removeuserevent/{event_id}", eventController.removeUserFromEvent(), Role.USER, Role.INSTRUCTOR, Role.ADMIN);
                 get("eventsbycategory/{category_id}", eventController.getAllEventsByCategory(), Role.ANYONE);
                 get("eventsbystatus/{status}", eventController.getAllEventsByStatus(), Role.ANYONE);
@@ -78,13 +112,13 @@ public class Main {
     }
 
     public static void getUserRoutes(){
-        before(securityController.authenticate());
         path("/user", () -> {
             path("/", () -> {
             before(securityController.authenticate());
             get("/all", userController.getAllUsers(), Role.ADMIN);
             get("/{id}", userController.getUserById(), Role.ADMIN);
             post("/create", userController.createUser(), Role.ADMIN, Role.INSTRUCTOR);
+            post("/import", userController.importUsers(), Role.ADMIN);
             put("/update/{id}", userController.updateUser(), Role.USER, Role.INSTRUCTOR, Role.ADMIN);
             delete("/delete/{id}", userController.deleteUser(), Role.USER, Role.INSTRUCTOR, Role.ADMIN);
             post("/logout", userController.logout(), Role.USER, Role.ADMIN, Role.INSTRUCTOR);
@@ -122,6 +156,23 @@ public class Main {
         };
     }
 
+    public static EndpointGroup getAdminRoutes(){
+        return ()->{
+            path("/admin", ()->{
+                before(securityController.authenticate());
+                get("/pool", adminController.getPoolStats(), Role.ADMIN);
+                get("/sessions", adminController.getSessionStats(), Role.ADMIN);
+                get("/cache", adminController.getCacheStats(), Role.ADMIN);
+                get("/tokens", adminController.getTokenStats(), Role.ADMIN);
+                get("/passwords", adminController.getPasswordHasherStats(), Role.ADMIN);
+                get("/catalogue", adminController.getCatalogueStats(), Role.ADMIN);
+                get("/autocomplete", adminController.getAutocompleteStats(), Role.ADMIN);
+                // Query strings and JVM internals, same as the rest: the scraper sends an admin token as bearer
+                get("/metrics", adminController.getMetrics(), Role.ADMIN);
+            });
+        };
+    }
+
     public enum Role implements RouteRole {
         ANYONE,
         USER,
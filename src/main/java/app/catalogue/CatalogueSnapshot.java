@@ -0,0 +1,203 @@
+package app.catalogue;
+
+import app.dao.EventChangeListener;
+import app.dao.EventDAO;
+import app.dto.CatalogueSnapshotStatsDTO;
+import app.dto.EventDTO;
+import app.utils.ConditionalGet;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.json.JavalinJackson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/*
+
+The full event catalogue (GET /api/events/ without paging or filters) as ready-made bytes. Every anonymous
+user gets the same array, so it is serialized once per change instead of once per request: plain JSON and
+a gzip'ed copy, both written straight to the response without another copy or any JSON work.
+
+A change to an event (EventDAO.catalogueChanged) schedules a rebuild CATALOGUE_REBUILD_DELAY_MS later on
+a single background thread. Further changes before it runs are folded into that rebuild but don't push it
+back (a throttle, not a debounce), so a burst of admin edits costs one rebuild per window rather than one
+per edit, and a steady stream of them still gets a fresh snapshot every window. The new snapshot replaces
+the old one with a single reference swap, readers never see a half-built one.
+
+A snapshot is only served while its version is EventDAO's current version. Between a change and the rebuild
+the controller falls back to the database, so nobody gets a catalogue older than their own last write.
+
+*/
+public class CatalogueSnapshot implements EventChangeListener {
+    private static final Logger log = LoggerFactory.getLogger(CatalogueSnapshot.class);
+    private static final long REBUILD_DELAY_MS = getEnvLong("CATALOGUE_REBUILD_DELAY_MS", 250);
+    private static final long RETRY_MS = getEnvLong("CATALOGUE_REBUILD_RETRY_MS", 5000);
+    private static CatalogueSnapshot instance;
+
+    public record Snapshot(long version, int events, byte[] json, byte[] gzip, String etag) {
+    }
+
+    private final EventDAO eventDAO;
+    private final ObjectMapper mapper = JavalinJackson.defaultMapper(); // same output as ctx.json()
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalogue-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder failedRebuilds = new LongAdder();
+    private final LongAdder served = new LongAdder();
+    private volatile long lastRebuildMs;
+
+    private CatalogueSnapshot(EventDAO eventDAO) {
+        this.eventDAO = eventDAO;
+    }
+
+    // Builds the first snapshot in the background and keeps it up to date from then on
+    public static synchronized CatalogueSnapshot start(EventDAO eventDAO) {
+        if (instance == null) {
+            instance = new CatalogueSnapshot(eventDAO);
+            EventDAO.addChangeListener(instance);
+            instance.scheduleRebuild(0);
+        }
+        return instance;
+    }
+
+    public static synchronized CatalogueSnapshot getInstance() {
+        return instance;
+    }
+
+    // The snapshot for the current catalogue version, null if it isn't built yet
+    public Snapshot current() {
+        Snapshot snapshot = current.get();
+        if (snapshot == null || snapshot.version() != EventDAO.getCatalogueVersion()) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    public void write(Context ctx, Snapshot snapshot) {
+        served.increment();
+        ConditionalGet.tag(ctx, snapshot.etag());
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        if (acceptsGzip(ctx.header(Header.ACCEPT_ENCODING))) {
+            // Javalin leaves responses that already have a Content-Encoding alone
+            ctx.header(Header.CONTENT_ENCODING, "gzip");
+            ctx.result(snapshot.gzip());
+        } else {
+            ctx.result(snapshot.json());
+        }
+    }
+
+    @Override
+    public void eventsChanged(long catalogueVersion, Set<Integer> eventIds) {
+        scheduleRebuild(REBUILD_DELAY_MS);
+    }
+
+    private void scheduleRebuild(long delayMs) {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuilder.schedule(this::rebuild, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rebuild() {
+        // Cleared first, so a change committed while we read schedules the next rebuild
+        rebuildScheduled.set(false);
+        long version = EventDAO.getCatalogueVersion(); // before the read, see ConditionalGet
+        long start = System.nanoTime();
+        try {
+            List<EventDTO> events = eventDAO.getAlleEvents(EventDTO::new);
+            byte[] json = mapper.writeValueAsBytes(events);
+            current.set(new Snapshot(version, events.size(), json, gzip(json), ConditionalGet.etag(version)));
+            lastRebuildMs = (System.nanoTime() - start) / 1_000_000;
+            rebuilds.increment();
+        } catch (Exception e) {
+            // Requests keep going to the database meanwhile
+            failedRebuilds.increment();
+            log.warn("Catalogue snapshot rebuild failed, retrying in {} ms", RETRY_MS, e);
+            scheduleRebuild(RETRY_MS);
+        }
+    }
+
+    // Built once and served many times, so it is worth the best compression
+    private static byte[] gzip(byte[] json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(json);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Accept-Encoding with q-values: an explicit gzip entry decides, otherwise "*" does; q=0 means refused
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzip = -1;
+        double wildcard = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                gzip = Math.max(gzip, quality(parts));
+            } else if (name.equals("*")) {
+                wildcard = Math.max(wildcard, quality(parts));
+            }
+        }
+        return (gzip >= 0 ? gzip : wildcard) > 0;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.length() > 2 && (param.charAt(0) == 'q' || param.charAt(0) == 'Q') && param.charAt(1) == '=') {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0; // malformed, don't risk sending gzip
+                }
+            }
+        }
+        return 1;
+    }
+
+    public CatalogueSnapshotStatsDTO getStats() {
+        Snapshot snapshot = current.get();
+        return new CatalogueSnapshotStatsDTO(
+                snapshot != null ? snapshot.version() : -1,
+                EventDAO.getCatalogueVersion(),
+                snapshot != null ? snapshot.events() : 0,
+                snapshot != null ? snapshot.json().length : 0,
+                snapshot != null ? snapshot.gzip().length : 0,
+                rebuilds.sum(),
+                failedRebuilds.sum(),
+                lastRebuildMs,
+                served.sum());
+    }
+
+    private static long getEnvLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
@@ -0,0 +1,198 @@
+package app.catalogue;
+
+import app.dao.DAO;
+import app.dao.EventChangeListener;
+import app.dao.EventDAO;
+import app.dto.EventDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/*
+
+An in-memory copy of all events (as EventDTOs) that follows the database, for the in-process indexes
+(search, ...) so each of them doesn't have to load and reload events on its own.
+
+The whole catalogue is read once at start. After that only the events a change touched are read again:
+EventDAO tells us their ids after the commit, they are collected for EVENT_FEED_DEBOUNCE_MS and then read
+in one query. Ids that don't come back were deleted. Subscribers get the initial load and every batch of
+changes after it, in order, on the feed's one background thread, so an index never has to deal with two
+updates at once (its readers are its own business).
+
+If a read fails the ids are kept and tried again EVENT_FEED_RETRY_MS later.
+
+*/
+public class EventFeed implements EventChangeListener {
+    private static final Logger log = LoggerFactory.getLogger(EventFeed.class);
+    private static final long DEBOUNCE_MS = getEnvLong("EVENT_FEED_DEBOUNCE_MS", 50);
+    private static final long RETRY_MS = getEnvLong("EVENT_FEED_RETRY_MS", 5000);
+    private static EventFeed instance;
+
+    public interface Subscriber {
+        // All events, once, before any changed() call
+        void loaded(List<EventDTO> events);
+
+        void changed(List<EventDTO> saved, Set<Integer> deletedIds);
+    }
+
+    private final EventDAO eventDAO;
+    private final EventMirror events = new EventMirror();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean syncScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService feed = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean loaded;
+    private volatile long syncedVersion = -1;
+
+    private EventFeed(EventDAO eventDAO) {
+        this.eventDAO = eventDAO;
+    }
+
+    public static synchronized EventFeed start(EventDAO eventDAO) {
+        if (instance == null) {
+            instance = new EventFeed(eventDAO);
+            EventDAO.addChangeListener(instance);
+            instance.scheduleSync(0);
+        }
+        return instance;
+    }
+
+    public static synchronized EventFeed getInstance() {
+        return instance;
+    }
+
+    // A subscriber added after the initial load gets the events as they are now, then the changes
+    public void subscribe(Subscriber subscriber) {
+        feed.execute(() -> {
+            subscribers.add(subscriber);
+            if (loaded) {
+                notify(subscriber, s -> s.loaded(events.getAll()));
+            }
+        });
+    }
+
+    public EventDTO getEvent(int id) {
+        return events.getById(id);
+    }
+
+    public List<EventDTO> getEvents() {
+        return events.getAll();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // True when every committed change has made it into the copy (and on to the subscribers)
+    public boolean isCurrent() {
+        return syncedVersion == EventDAO.getCatalogueVersion();
+    }
+
+    @Override
+    public void eventsChanged(long catalogueVersion, Set<Integer> eventIds) {
+        pending.addAll(eventIds);
+        scheduleSync(DEBOUNCE_MS);
+    }
+
+    private void scheduleSync(long delayMs) {
+        if (syncScheduled.compareAndSet(false, true)) {
+            feed.schedule(this::sync, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sync() {
+        // Cleared first, so a change committed while we read schedules the next sync
+        syncScheduled.set(false);
+        long version = EventDAO.getCatalogueVersion(); // before the read, like CatalogueSnapshot
+        if (!loaded) {
+            load(version);
+            return;
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Integer id : pending) {
+            pending.remove(id);
+            ids.add(id);
+        }
+        if (ids.isEmpty()) {
+            syncedVersion = version;
+            return;
+        }
+        List<EventDTO> saved;
+        try {
+            saved = eventDAO.getEventsByIds(ids, EventDTO::new);
+        } catch (Exception e) {
+            pending.addAll(ids);
+            log.warn("Reading {} changed events failed, retrying in {} ms", ids.size(), RETRY_MS, e);
+            scheduleSync(RETRY_MS);
+            return;
+        }
+        Set<Integer> deleted = new HashSet<>(ids);
+        for (EventDTO event : saved) {
+            deleted.remove(event.getEventId());
+            events.save(event); // replaces the old copy
+        }
+        deleted.forEach(events::delete);
+        for (Subscriber subscriber : subscribers) {
+            notify(subscriber, s -> s.changed(saved, deleted));
+        }
+        syncedVersion = version;
+    }
+
+    private void load(long version) {
+        List<EventDTO> all;
+        try {
+            all = eventDAO.getAlleEvents(EventDTO::new);
+        } catch (Exception e) {
+            log.warn("Loading the events failed, retrying in {} ms", RETRY_MS, e);
+            scheduleSync(RETRY_MS);
+            return;
+        }
+        all.forEach(events::save);
+        loaded = true;
+        for (Subscriber subscriber : subscribers) {
+            notify(subscriber, s -> s.loaded(new ArrayList<>(all)));
+        }
+        syncedVersion = version;
+        // Changes committed during the read may or may not be in it, read them again
+        if (!pending.isEmpty()) {
+            scheduleSync(0);
+        }
+        log.info("Event feed loaded {} events", all.size());
+    }
+
+    // One broken index shouldn't keep the others from getting their updates
+    private static void notify(Subscriber subscriber, Consumer<Subscriber> call) {
+        try {
+            call.accept(subscriber);
+        } catch (Exception e) {
+            log.error("Event feed subscriber {} failed", subscriber.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static class EventMirror extends DAO<EventDTO> {
+        @Override
+        protected int getId(EventDTO event) {
+            return event.getEventId();
+        }
+    }
+
+    private static long getEnvLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
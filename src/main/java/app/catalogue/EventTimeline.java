@@ -0,0 +1,138 @@
+package app.catalogue;
+
+import app.dao.EventStart;
+import app.dao.IntObjectMap;
+import app.dto.EventDTO;
+import app.dto.PageDTO;
+import app.model.Location;
+import app.utils.Pagination;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*
+
+The events in start time order (date at time, then id), for "the next n events", "events between A and
+B" and the same per location. Skip lists keyed by EventStart: a page is one O(log n) seek and then k
+steps along the list, whatever the size of the catalogue.
+
+There is one list with everything and one per location. Readers don't lock, the skip lists are concurrent.
+Only the EventFeed's thread writes: a moved event is put at its new start before it is taken away from
+the old one, so a reader may briefly see it twice across pages but never miss it. 'starts' (where each
+event is now) is only touched by that thread.
+
+Until the feed has loaded, EventController reads the same pages from the database instead
+(EventDAO.getEventsByStart).
+
+*/
+public class EventTimeline implements EventFeed.Subscriber {
+    private static EventTimeline instance;
+
+    private final ConcurrentSkipListMap<EventStart, EventDTO> all = new ConcurrentSkipListMap<>();
+    private final Map<Location, ConcurrentSkipListMap<EventStart, EventDTO>> byLocation = new EnumMap<>(Location.class);
+    private final IntObjectMap<EventStart> starts = new IntObjectMap<>();
+    private volatile boolean ready;
+
+    private EventTimeline() {
+        for (Location location : Location.values()) {
+            byLocation.put(location, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    public static synchronized EventTimeline start(EventFeed feed) {
+        if (instance == null) {
+            instance = new EventTimeline();
+            feed.subscribe(instance);
+        }
+        return instance;
+    }
+
+    public static synchronized EventTimeline getInstance() {
+        return instance;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    // Events starting in [from, to) (to null for no end), optionally in one location, continuing after 'after'
+    public PageDTO<EventDTO> between(LocalDateTime from, LocalDateTime to, Location location, EventStart after, int limit) {
+        EventStart lower = new EventStart(from, 0); // ids start at 1, so this includes events starting at 'from'
+        if (after != null && after.compareTo(lower) > 0) {
+            lower = after;
+        }
+        ConcurrentNavigableMap<EventStart, EventDTO> timeline = location != null ? byLocation.get(location) : all;
+        ConcurrentNavigableMap<EventStart, EventDTO> range = to != null
+                ? timeline.subMap(lower, false, new EventStart(to, 0), false)
+                : timeline.tailMap(lower, false);
+
+        List<EventDTO> items = new ArrayList<>(Math.min(limit, 64));
+        EventStart last = null;
+        String next = null;
+        for (Map.Entry<EventStart, EventDTO> entry : range.entrySet()) {
+            if (items.size() == limit) {
+                next = Pagination.encodeTimeCursor(last);
+                break;
+            }
+            items.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new PageDTO<>(items, next, limit);
+    }
+
+    @Override
+    public void loaded(List<EventDTO> events) {
+        events.forEach(this::put);
+        ready = true;
+    }
+
+    @Override
+    public void changed(List<EventDTO> saved, Set<Integer> deletedIds) {
+        saved.forEach(this::put);
+        deletedIds.forEach(this::remove);
+    }
+
+    // Called on the feed's thread only
+    private void put(EventDTO event) {
+        if (event.getDate() == null || event.getTime() == null) {
+            remove(event.getEventId());
+            return;
+        }
+        EventStart start = new EventStart(event.getDate().atTime(event.getTime()), event.getEventId());
+        EventStart old = starts.put(event.getEventId(), start);
+        EventDTO previous = old != null ? all.get(old) : null;
+        all.put(start, event);
+        if (event.getLocation() != null) {
+            byLocation.get(event.getLocation()).put(start, event);
+        }
+        if (old != null && !old.equals(start)) {
+            all.remove(old);
+        }
+        if (previous != null && previous.getLocation() != null
+                && (!old.equals(start) || previous.getLocation() != event.getLocation())) {
+            byLocation.get(previous.getLocation()).remove(old);
+        }
+    }
+
+    // Called on the feed's thread only
+    private void remove(int eventId) {
+        EventStart old = starts.remove(eventId);
+        if (old == null) {
+            return;
+        }
+        EventDTO previous = all.remove(old);
+        if (previous != null && previous.getLocation() != null) {
+            byLocation.get(previous.getLocation()).remove(old);
+        }
+    }
+}
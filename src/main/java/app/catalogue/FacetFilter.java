@@ -0,0 +1,19 @@
+package app.catalogue;
+
+import app.model.Location;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.YearMonth;
+import java.util.HashSet;
+import java.util.Set;
+
+// Picked facet values. Values of one dimension are OR'ed, the dimensions AND'ed, an empty set doesn't filter.
+@Getter
+@NoArgsConstructor
+public class FacetFilter {
+    private final Set<Integer> categoryIds = new HashSet<>();
+    private final Set<Location> locations = new HashSet<>();
+    private final Set<String> statuses = new HashSet<>();
+    private final Set<YearMonth> months = new HashSet<>();
+}
@@ -0,0 +1,235 @@
+package app.catalogue;
+
+import app.dao.IntObjectMap;
+import app.dto.EventDTO;
+import app.dto.FacetCountDTO;
+import app.dto.FacetedPageDTO;
+import app.model.Location;
+import app.utils.Pagination;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/*
+
+Faceted filtering of the catalogue (category x location x status x month) without the database. Every
+facet value has a compressed bitmap (Roaring) of the event ids that have it. The ids come from a
+sequence, so they are dense enough to be the bitmap positions themselves, no separate ordinals needed.
+
+A filter ORs the picked values within a dimension and ANDs the dimensions. The facet counts are the
+usual "what if I click this" counts: a dimension's counts apply the filters of the OTHER dimensions only,
+so picking Aarhus doesn't make Odense show 0. They are cardinalities of bitmap ANDs, nothing is listed.
+
+Kept up to date from the EventFeed: a changed event is removed from the bitmaps of its old values and
+added to those of its new ones. Readers share a read lock, the feed's updates take the write lock.
+
+*/
+public class FacetIndex implements EventFeed.Subscriber {
+    private static FacetIndex instance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<EventDTO> events = new IntObjectMap<>();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Dimension<Integer> categories = new Dimension<>();
+    private final Dimension<Location> locations = new Dimension<>();
+    private final Dimension<String> statuses = new Dimension<>();
+    private final Dimension<YearMonth> months = new Dimension<>();
+    private final Map<Integer, String> categoryNames = new HashMap<>();
+    private volatile boolean ready;
+
+    FacetIndex() { // the app uses start(), tests make their own
+    }
+
+    public static synchronized FacetIndex start(EventFeed feed) {
+        if (instance == null) {
+            instance = new FacetIndex();
+            feed.subscribe(instance);
+        }
+        return instance;
+    }
+
+    public static synchronized FacetIndex getInstance() {
+        return instance;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // One page of the matching events (by id, like the other list endpoints) with the total and the facet counts
+    public FacetedPageDTO<EventDTO> filter(FacetFilter filter, int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap category = categories.select(filter.getCategoryIds());
+            RoaringBitmap location = locations.select(filter.getLocations());
+            RoaringBitmap status = statuses.select(filter.getStatuses());
+            RoaringBitmap month = months.select(filter.getMonths());
+            RoaringBitmap matches = and(category, location, status, month);
+
+            Map<String, List<FacetCountDTO>> facets = new LinkedHashMap<>();
+            facets.put("category", categories.counts(and(location, status, month), filter.getCategoryIds(),
+                    String::valueOf, id -> categoryNames.getOrDefault(id, String.valueOf(id))));
+            facets.put("location", locations.counts(and(category, status, month), filter.getLocations(),
+                    Location::name, Location::name));
+            facets.put("status", statuses.counts(and(category, location, month), filter.getStatuses(),
+                    Function.identity(), Function.identity()));
+            facets.put("month", months.counts(and(category, location, status), filter.getMonths(),
+                    YearMonth::toString, YearMonth::toString));
+
+            List<EventDTO> items = new ArrayList<>(limit);
+            PeekableIntIterator ids = matches.getIntIterator();
+            ids.advanceIfNeeded(afterId + 1);
+            while (ids.hasNext() && items.size() < limit) {
+                items.add(events.get(ids.next()));
+            }
+            String next = ids.hasNext() && !items.isEmpty() ? Pagination.encodeCursor(items.get(items.size() - 1).getEventId()) : null;
+            return new FacetedPageDTO<>(items, next, limit, matches.getCardinality(), facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void loaded(List<EventDTO> catalogue) {
+        lock.writeLock().lock();
+        try {
+            catalogue.forEach(this::add);
+            optimize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+    }
+
+    @Override
+    public void changed(List<EventDTO> saved, Set<Integer> deletedIds) {
+        lock.writeLock().lock();
+        try {
+            for (EventDTO event : saved) {
+                remove(event.getEventId());
+                add(event);
+            }
+            deletedIds.forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called with the write lock held
+    private void add(EventDTO event) {
+        int id = event.getEventId();
+        events.put(id, event);
+        all.add(id);
+        if (event.getCategory() != null) {
+            categories.add(event.getCategory().getCategoryId(), id);
+            categoryNames.put(event.getCategory().getCategoryId(), event.getCategory().getCategoryName());
+        }
+        locations.add(event.getLocation(), id);
+        statuses.add(event.getStatus(), id);
+        months.add(event.getDate() != null ? YearMonth.from(event.getDate()) : null, id);
+    }
+
+    // Called with the write lock held
+    private void remove(int id) {
+        EventDTO event = events.remove(id);
+        if (event == null) {
+            return;
+        }
+        all.remove(id);
+        if (event.getCategory() != null) {
+            categories.remove(event.getCategory().getCategoryId(), id);
+        }
+        locations.remove(event.getLocation(), id);
+        statuses.remove(event.getStatus(), id);
+        months.remove(event.getDate() != null ? YearMonth.from(event.getDate()) : null, id);
+    }
+
+    // Switches runs of consecutive ids to run containers, worth it after a bulk load
+    private void optimize() {
+        all.runOptimize();
+        categories.optimize();
+        locations.optimize();
+        statuses.optimize();
+        months.optimize();
+    }
+
+    // AND of the selections, null ones don't filter
+    private RoaringBitmap and(RoaringBitmap... selections) {
+        RoaringBitmap result = null;
+        for (RoaringBitmap selection : selections) {
+            if (selection != null) {
+                result = result == null ? selection : RoaringBitmap.and(result, selection);
+            }
+        }
+        return result != null ? result : all;
+    }
+
+    private static class Dimension<K extends Comparable<K>> {
+        private final NavigableMap<K, RoaringBitmap> bitmaps = new TreeMap<>();
+
+        void add(K key, int id) {
+            if (key != null) {
+                bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(id);
+            }
+        }
+
+        void remove(K key, int id) {
+            if (key == null) {
+                return;
+            }
+            RoaringBitmap bitmap = bitmaps.get(key);
+            if (bitmap != null) {
+                bitmap.remove(id);
+                if (bitmap.isEmpty()) {
+                    bitmaps.remove(key);
+                }
+            }
+        }
+
+        // The events with any of the picked values, null when nothing is picked (no filter)
+        RoaringBitmap select(Set<K> picked) {
+            if (picked.isEmpty()) {
+                return null;
+            }
+            List<RoaringBitmap> selected = new ArrayList<>(picked.size());
+            for (K key : picked) {
+                RoaringBitmap bitmap = bitmaps.get(key);
+                if (bitmap != null) {
+                    selected.add(bitmap);
+                }
+            }
+            return selected.isEmpty() ? new RoaringBitmap() : FastAggregation.or(selected.iterator());
+        }
+
+        // Every value there is, plus picked values no event has (so the UI can still show them as picked)
+        List<FacetCountDTO> counts(RoaringBitmap base, Set<K> picked, Function<K, String> value, Function<K, String> label) {
+            List<FacetCountDTO> counts = new ArrayList<>(bitmaps.size());
+            for (Map.Entry<K, RoaringBitmap> entry : bitmaps.entrySet()) {
+                int count = RoaringBitmap.andCardinality(base, entry.getValue());
+                counts.add(new FacetCountDTO(value.apply(entry.getKey()), label.apply(entry.getKey()), count, picked.contains(entry.getKey())));
+            }
+            for (K key : picked) {
+                if (!bitmaps.containsKey(key)) {
+                    counts.add(new FacetCountDTO(value.apply(key), label.apply(key), 0, true));
+                }
+            }
+            return counts;
+        }
+
+        void optimize() {
+            bitmaps.values().forEach(RoaringBitmap::runOptimize);
+        }
+    }
+}
@@ -3,21 +3,36 @@ package app.config;
 import app.Main;
 import app.controllers.ISecurityController;
 import app.controllers.SecurityController;
+import app.dao.UnitOfWork;
 import app.dto.UserDTO;
 import app.exceptions.ApiException;
+import app.metrics.MetricsRegistry;
+import app.metrics.RequestLog;
+import app.utils.JsonStreaming;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.javalin.Javalin;
 import io.javalin.apibuilder.EndpointGroup;
+import io.javalin.compression.Brotli;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.http.Context;
 import io.javalin.http.HttpStatus;
 import io.javalin.security.AccessManager;
 import io.javalin.security.RouteRole;
+import io.javalin.util.ConcurrencyUtil;
+import jakarta.persistence.EntityManagerFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class ApplicationConfig {
+    private static final Logger log = LoggerFactory.getLogger(ApplicationConfig.class);
     ObjectMapper om = new ObjectMapper();
     ISecurityController securityController = new SecurityController();
     private Javalin app;
@@ -30,14 +45,51 @@ public class ApplicationConfig {
         return instance;
     }
     public ApplicationConfig initiateServer(){
+        // Javalin switches to virtual threads by itself on JDK 21, here it is opt-in with SERVER_VIRTUAL_THREADS=true.
+        // Platform mode keeps a fixed pool of SERVER_MIN_THREADS-SERVER_MAX_THREADS Jetty threads.
+        ConcurrencyUtil.INSTANCE.setUseLoom(isVirtualThreadMode());
+        int minThreads = getEnvInt("SERVER_MIN_THREADS", 8);
+        int maxThreads = getEnvInt("SERVER_MAX_THREADS", 250);
         app = Javalin.create(config->{
             config.http.defaultContentType = "application/json";
             config.routing.contextPath = "/api";
+            config.jetty.server(() -> new Server(ConcurrencyUtil.jettyThreadPool("JettyServerThreadPool", minThreads, maxThreads)));
+            config.compression.custom(compressionStrategy());
+            // Javalin keeps a single request logger, so metrics and the sampled access log share it
+            config.requestLogger.http((ctx, ms) -> {
+                MetricsRegistry.getInstance().requestFinished(ctx, ms);
+                RequestLog.requestFinished(ctx, ms);
+            });
         });
+        app.before(ctx -> MetricsRegistry.getInstance().requestStarted());
 
         return instance;
     }
 
+    public static boolean isVirtualThreadMode() {
+        return Boolean.parseBoolean(System.getenv("SERVER_VIRTUAL_THREADS")) && ConcurrencyUtil.isLoomAvailable();
+    }
+
+    // Brotli when the client accepts it (smaller than gzip for our JSON), gzip otherwise, nothing below
+    // COMPRESSION_MIN_BYTES where the headers would eat the saving. Brotli needs the jvm-brotli native library,
+    // where it can't be loaded (e.g. musl/alpine) Javalin logs a warning and serves gzip only.
+    private static CompressionStrategy compressionStrategy() {
+        Gzip gzip = new Gzip(getEnvInt("COMPRESSION_GZIP_LEVEL", 6));
+        CompressionStrategy strategy;
+        try {
+            strategy = new CompressionStrategy(new Brotli(getEnvInt("COMPRESSION_BROTLI_LEVEL", 4)), gzip);
+        } catch (IllegalStateException e) {
+            strategy = new CompressionStrategy(null, gzip); // jvm-brotli isn't on the classpath
+        }
+        strategy.setMinSizeForCompression(getEnvInt("COMPRESSION_MIN_BYTES", 1024));
+        return strategy;
+    }
+
+    private static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
     public ApplicationConfig checkSecurityRoles() {
         // Check roles on the user (ctx.attribute("username") and compare with permittedRoles using securityController.authorize()
         app.updateConfig(config -> {
@@ -53,7 +105,6 @@ public class ApplicationConfig {
                 }
 
                 UserDTO user = ctx.attribute("user");
-                System.out.println("USER IN CHECK_SEC_ROLES: "+user);
                 if(user == null)
                     ctx.status(HttpStatus.FORBIDDEN)
                             .json(om.createObjectNode()
@@ -77,13 +128,43 @@ public class ApplicationConfig {
     }
 
     public ApplicationConfig setExceptionHandling(){
+        app.exception(ApiException.class, (e,ctx)->{
+            if (responseStarted(ctx, e.getStatusCode(), e)) {
+                return;
+            }
+            ObjectNode node = om.createObjectNode().put("errorMessage",e.getMessage());
+            ctx.status(e.getStatusCode()).json(node);
+        });
         app.exception(Exception.class, (e,ctx)->{
+            if (responseStarted(ctx, 500, e)) {
+                return;
+            }
             ObjectNode node = om.createObjectNode().put("errorMessage",e.getMessage());
             ctx.status(500).json(node);
         });
         return instance;
     }
 
+    // A streamed export that fails halfway has part of its body out already (maybe compressed, maybe sent).
+    // A JSON error appended to it would only be more garbage, so it is logged and the body stays truncated.
+    private static boolean responseStarted(Context ctx, int status, Exception e) {
+        if (!ctx.res().isCommitted() && !JsonStreaming.hasStarted(ctx)) {
+            return false;
+        }
+        if (!ctx.res().isCommitted()) {
+            ctx.status(status); // the headers haven't gone out yet
+        }
+        log.error("Failed after the response was started: {} {}", ctx.method(), ctx.path(), e);
+        return true;
+    }
+
+    public ApplicationConfig setupUnitOfWork(EntityManagerFactory emf) {
+        // One EntityManager per request: the DAOs share it, and it is always closed when the request is done
+        app.before(ctx -> UnitOfWork.begin(emf));
+        app.after(ctx -> UnitOfWork.end(ctx.statusCode() < 400));
+        return instance;
+    }
+
     public ApplicationConfig setupAccessManager() {
         AccessManager accessManager = (handler, ctx, permittedRoles) -> {
             // Check if the route is accessible to anyone without authentication
@@ -131,6 +212,10 @@ public class ApplicationConfig {
         app.stop();
     }
 
+    public ThreadPool getServerThreadPool() {
+        return app.jettyServer().server().getThreadPool();
+    }
+
     //public enum Role implements RouteRole { ANYONE, USER, ADMIN }
 
     public ApplicationConfig configureCors() {
@@ -138,12 +223,13 @@ public class ApplicationConfig {
             ctx.header("Access-Control-Allow-Origin", "*");
             ctx.header("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
             ctx.header("Access-Control-Allow-Headers", "Content-Type");
+            ctx.header("Access-Control-Expose-Headers", "ETag"); // so browser clients can send it back as If-None-Match
         });
 
         app.options("/*", ctx -> {
             ctx.header("Access-Control-Allow-Origin", "*");
             ctx.header("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-            ctx.header("Access-Control-Allow-Headers", "Content-Type");
+            ctx.header("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
         });
 
         return this;
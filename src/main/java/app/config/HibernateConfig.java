@@ -4,19 +4,36 @@ package app.config;
 import app.model.Category;
 import app.model.Role;
 import app.model.User;
+import app.dto.CacheRegionStatsDTO;
+import app.dto.PoolStatsDTO;
+import app.metrics.QueryCounter;
 import app.utils.Utils;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import jakarta.persistence.EntityManagerFactory;
 import app.model.Event;
+import app.model.EventSeats;
+import app.model.WaitlistEntry;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.service.ServiceRegistry;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 
 public class HibernateConfig {
+    private static final Logger log = LoggerFactory.getLogger(HibernateConfig.class);
     private static EntityManagerFactory emf;
+    private static final String POOL_NAME = "backendsem3-pool";
     private static boolean isIntegrationTest = false; // this flag is set for
 
     private static EntityManagerFactory buildEntityFactoryConfigDeployed() {
@@ -36,7 +53,7 @@ public class HibernateConfig {
             props.put("hibernate.hbm2ddl.auto", "update"/*"create-drop"*/); // hibernate creates tables based on entities
             return getEntityManagerFactory(configuration, props);
         } catch (Throwable ex) {
-            System.err.println("Initial SessionFactory creation failed." + ex);
+            log.error("Initial SessionFactory creation failed", ex);
             throw new ExceptionInInitializerError(ex);
         }
     }
@@ -70,6 +87,8 @@ public class HibernateConfig {
         configuration.addAnnotatedClass(Role.class);
         configuration.addAnnotatedClass(Event.class);
         configuration.addAnnotatedClass(Category.class);
+        configuration.addAnnotatedClass(EventSeats.class);
+        configuration.addAnnotatedClass(WaitlistEntry.class);
 
     }
 
@@ -79,6 +98,8 @@ public class HibernateConfig {
             Properties props = new Properties();
             // Set the properties
             setBaseProperties(props);
+            setPoolProperties(props);
+            setCacheProperties(props);
             if(forTest || isIntegrationTest) {
                 props = setTestProperties(props);
             }
@@ -96,7 +117,7 @@ public class HibernateConfig {
             EntityManagerFactory emf = sf.unwrap(EntityManagerFactory.class);
             return emf;
         } catch (Throwable ex) {
-            System.err.println("Initial SessionFactory creation failed." + ex);
+            log.error("Initial SessionFactory creation failed", ex);
             throw new ExceptionInInitializerError(ex);
         }
     }
@@ -111,22 +132,117 @@ public class HibernateConfig {
         props.put("hibernate.hbm2ddl.auto", "create-drop");
         props.put("hibernate.hbm2ddl.auto", "update");
         props.put("hibernate.current_session_context_class", "thread");
-        props.put("hibernate.show_sql", "true");
-        props.put("hibernate.format_sql", "true");
-        props.put("hibernate.use_sql_comments", "true");
+        // show_sql writes every statement to stdout on the request thread, so it is only on in dev (DB_SHOW_SQL overrides).
+        // LOG_LEVEL_SQL=debug sends the statements through the async logger instead, in any environment.
+        props.put("hibernate.show_sql", "false");
+        props.put("hibernate.format_sql", "false");
+        props.put("hibernate.use_sql_comments", "false");
+        // Batched inserts/updates, grouped per table so a bulk import becomes a few multi-row statements
+        props.put("hibernate.jdbc.batch_size", getEnvOrDefault("DB_BATCH_SIZE", "50"));
+        props.put("hibernate.order_inserts", "true");
+        props.put("hibernate.order_updates", "true");
+        props.put("hibernate.session_factory.statement_inspector", QueryCounter.class.getName()); // statements per request, see /api/admin/metrics
         return props;
     }
 
+    private static Properties setPoolProperties(Properties props){
+        // HikariCP instead of Hibernate's built-in DriverManagerConnectionProvider, which is not meant for production.
+        // Every value can be overridden with an environment variable, so the pool can be sized against the Jetty thread pool.
+        // LimitedConnectionProvider is Hibernate's HikariCP provider with a concurrency limit on connection checkout
+        props.put("hibernate.connection.provider_class", LimitedConnectionProvider.class.getName());
+        // Take a connection at the first statement and give it back at the end of the transaction (after each
+        // statement outside one), so the EntityManager a request keeps open doesn't keep a connection with it
+        props.put("hibernate.connection.handling_mode", "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+        props.put("hibernate.hikari.poolName", POOL_NAME);
+        props.put("hibernate.hikari.minimumIdle", getEnvOrDefault("DB_POOL_MIN_IDLE", "2"));
+        props.put("hibernate.hikari.maximumPoolSize", getEnvOrDefault("DB_POOL_MAX_SIZE", "10"));
+        props.put("hibernate.hikari.connectionTimeout", getEnvOrDefault("DB_POOL_ACQUIRE_TIMEOUT_MS", "5000")); // how long a request waits for a free connection
+        props.put("hibernate.hikari.idleTimeout", getEnvOrDefault("DB_POOL_IDLE_TIMEOUT_MS", "300000")); // idle connections above minimumIdle are evicted after this
+        props.put("hibernate.hikari.maxLifetime", getEnvOrDefault("DB_POOL_MAX_LIFETIME_MS", "1800000"));
+        props.put("hibernate.hikari.leakDetectionThreshold", getEnvOrDefault("DB_POOL_LEAK_DETECTION_MS", "20000")); // logs a stack trace for connections held longer than this
+        // Prepared statement caching is done by the postgres driver, per connection
+        props.put("hibernate.hikari.dataSource.prepareThreshold", getEnvOrDefault("DB_PREPARE_THRESHOLD", "3"));
+        props.put("hibernate.hikari.dataSource.preparedStatementCacheQueries", getEnvOrDefault("DB_STATEMENT_CACHE_SIZE", "256"));
+        props.put("hibernate.hikari.dataSource.preparedStatementCacheSizeMiB", getEnvOrDefault("DB_STATEMENT_CACHE_MIB", "5"));
+        props.put("hibernate.hikari.dataSource.reWriteBatchedInserts", "true"); // the driver turns a batch into INSERT ... VALUES (..), (..)
+        return props;
+    }
+
+    private static Properties setCacheProperties(Properties props){
+        // Second-level cache for the read-mostly entities (Event, Category, Role) and a query cache for the EventDAO finders.
+        // Region sizes and TTLs are in src/main/resources/ehcache.xml. Hibernate evicts/updates the regions itself
+        // when EventDAO.create/update/delete flush, so cached reads never outlive a committed change.
+        props.put("hibernate.cache.use_second_level_cache", "true");
+        props.put("hibernate.cache.use_query_cache", "true");
+        props.put("hibernate.cache.region.factory_class", "jcache");
+        props.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+        props.put("hibernate.javax.cache.uri", "ehcache.xml");
+        props.put("hibernate.generate_statistics", "true"); // needed for the hit/miss counters
+        return props;
+    }
+
+    public static Statistics getStatistics() {
+        return getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    public static List<CacheRegionStatsDTO> getCacheStats() {
+        Statistics statistics = getStatistics();
+        List<CacheRegionStatsDTO> regions = new ArrayList<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+            if (region != null) {
+                regions.add(new CacheRegionStatsDTO(
+                        regionName,
+                        region.getHitCount(),
+                        region.getMissCount(),
+                        region.getPutCount(),
+                        region.getElementCountInMemory()));
+            }
+        }
+        return regions;
+    }
+
+    private static String getEnvOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? value : defaultValue;
+    }
+
+    public static PoolStatsDTO getPoolStats() {
+        HikariDataSource dataSource = getConnectionPool(getEntityManagerFactory());
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return new PoolStatsDTO(
+                dataSource.getPoolName(),
+                pool.getActiveConnections(),
+                pool.getIdleConnections(),
+                pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection(),
+                dataSource.getMinimumIdle(),
+                dataSource.getMaximumPoolSize(),
+                dataSource.getConnectionTimeout());
+    }
+
+    private static HikariDataSource getConnectionPool(EntityManagerFactory emf) {
+        return emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class)
+                .unwrap(HikariDataSource.class);
+    }
+
     private static Properties setDeployedProperties(Properties props){
         props.setProperty("hibernate.connection.url", System.getenv("CONNECTION_STR") + getDBName());
         props.setProperty("hibernate.connection.username", System.getenv("DB_USERNAME"));
         props.setProperty("hibernate.connection.password", System.getenv("DB_PASSWORD"));
+        props.setProperty("hibernate.show_sql", getEnvOrDefault("DB_SHOW_SQL", "false"));
         return props;
     }
     private static Properties setDevProperties(Properties props){
         props.put("hibernate.connection.url", "jdbc:postgresql://localhost:5432/"+ getDBName());
         props.put("hibernate.connection.username", "postgres");
         props.put("hibernate.connection.password", "postgres");
+        String showSql = getEnvOrDefault("DB_SHOW_SQL", "true");
+        props.put("hibernate.show_sql", showSql);
+        props.put("hibernate.format_sql", showSql);
+        props.put("hibernate.use_sql_comments", showSql);
         return props;
     }
     private static Properties setTestProperties(Properties props){
@@ -136,7 +252,7 @@ public class HibernateConfig {
         props.put("hibernate.connection.username", "postgres");
         props.put("hibernate.connection.password", "postgres");
         props.put("hibernate.archive.autodetection", "class");
-        props.put("hibernate.show_sql", "true");
+        props.put("hibernate.show_sql", getEnvOrDefault("DB_SHOW_SQL", "false")); // off for the load test
         props.put("hibernate.hbm2ddl.auto", "create-drop");
         return props;
     }
@@ -0,0 +1,83 @@
+package app.config;
+
+import app.exceptions.ApiException;
+import org.hibernate.hikaricp.internal.HikariCPConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+
+HikariCP behind a fair semaphore sized like the pool (DB_MAX_CONCURRENCY, default DB_POOL_MAX_SIZE).
+With virtual threads there can be thousands of requests in flight, this makes them queue in order here
+instead of piling up inside HikariCP, and gives up with a 503 after DB_POOL_ACQUIRE_TIMEOUT_MS. The
+semaphore parks without pinning the carrier thread.
+
+A permit covers one JDBC connection from checkout to release, not an EntityManager or a request.
+Hibernate takes the connection at the first statement and hands it back at commit/rollback, or right
+after the statement outside a transaction (see hibernate.connection.handling_mode in HibernateConfig),
+so BCrypt, JSON serialization and the rest of a request don't hold one.
+
+*/
+public class LimitedConnectionProvider extends HikariCPConnectionProvider {
+    private static final int MAX_CONCURRENCY = (int) getEnvLong("DB_MAX_CONCURRENCY", getEnvLong("DB_POOL_MAX_SIZE", 10));
+    private static final long PERMIT_TIMEOUT_MS = getEnvLong("DB_POOL_ACQUIRE_TIMEOUT_MS", 5000);
+    private static final Semaphore permits = new Semaphore(MAX_CONCURRENCY, true);
+    private static final LongAdder permitTimeouts = new LongAdder();
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquirePermit();
+        try {
+            return super.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        try {
+            super.closeConnection(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static void acquirePermit() {
+        try {
+            if (!permits.tryAcquire(PERMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                permitTimeouts.increment();
+                throw new ApiException(503, "The database is busy, please try again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(503, "Interrupted while waiting for the database");
+        }
+    }
+
+    public static int getMaxConcurrency() {
+        return MAX_CONCURRENCY;
+    }
+
+    public static int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public static int getWaitingForPermit() {
+        return permits.getQueueLength();
+    }
+
+    public static long getPermitTimeouts() {
+        return permitTimeouts.sum();
+    }
+
+    private static long getEnvLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
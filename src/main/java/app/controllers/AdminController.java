@@ -0,0 +1,88 @@
+package app.controllers;
+
+import app.catalogue.CatalogueSnapshot;
+import app.config.ApplicationConfig;
+import app.config.HibernateConfig;
+import app.dao.UnitOfWork;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import app.metrics.MetricsRegistry;
+import app.search.Autocomplete;
+import app.security.PasswordHasher;
+import app.security.TokenVerifier;
+import io.javalin.http.Handler;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+public class AdminController implements IAdminController {
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public Handler getPoolStats() {
+        return (ctx) -> {
+            ObjectNode returnObject = objectMapper.createObjectNode();
+            returnObject.putPOJO("connectionPool", HibernateConfig.getPoolStats());
+
+            // The Jetty threads are the ones competing for connections, so they are reported next to the pool
+            ThreadPool threadPool = ApplicationConfig.getInstance().getServerThreadPool();
+            ObjectNode serverThreads = returnObject.putObject("serverThreads");
+            serverThreads.put("threads", threadPool.getThreads());
+            serverThreads.put("idleThreads", threadPool.getIdleThreads());
+            serverThreads.put("lowOnThreads", threadPool.isLowOnThreads());
+            if (threadPool instanceof ThreadPool.SizedThreadPool sized) {
+                serverThreads.put("maxThreads", sized.getMaxThreads());
+            }
+            ctx.json(returnObject);
+        };
+    }
+
+    @Override
+    public Handler getSessionStats() {
+        return (ctx) -> ctx.json(UnitOfWork.getStats());
+    }
+
+    @Override
+    public Handler getCacheStats() {
+        return (ctx) -> ctx.json(HibernateConfig.getCacheStats());
+    }
+
+    @Override
+    public Handler getTokenStats() {
+        return (ctx) -> ctx.json(TokenVerifier.getInstance().getStats());
+    }
+
+    @Override
+    public Handler getPasswordHasherStats() {
+        return (ctx) -> ctx.json(PasswordHasher.getInstance().getStats());
+    }
+
+    @Override
+    public Handler getCatalogueStats() {
+        return (ctx) -> {
+            CatalogueSnapshot snapshot = CatalogueSnapshot.getInstance();
+            if (snapshot == null) {
+                ctx.status(404).json(objectMapper.createObjectNode().put("msg", "The catalogue snapshot is not running"));
+                return;
+            }
+            ctx.json(snapshot.getStats());
+        };
+    }
+
+    @Override
+    public Handler getAutocompleteStats() {
+        return (ctx) -> {
+            Autocomplete autocomplete = Autocomplete.getInstance();
+            if (autocomplete == null) {
+                ctx.status(404).json(objectMapper.createObjectNode().put("msg", "Autocomplete is not running"));
+                return;
+            }
+            ctx.json(autocomplete.getStats());
+        };
+    }
+
+    @Override
+    public Handler getMetrics() {
+        // Prometheus text format
+        return (ctx) -> ctx.contentType("text/plain; version=0.0.4; charset=utf-8").result(MetricsRegistry.getInstance().scrape());
+    }
+}
@@ -1,39 +1,70 @@
 package app.controllers;
 
+import app.catalogue.CatalogueSnapshot;
+import app.catalogue.EventTimeline;
+import app.catalogue.FacetFilter;
+import app.catalogue.FacetIndex;
 import app.config.HibernateConfig;
 import app.dao.EventDAO;
+import app.dao.EventFilter;
+import app.dao.EventStart;
+import app.dao.RegistrationResult;
 import app.dao.UserDAO;
 import app.dto.EventDTO;
 import app.dto.UserDTO;
 
+import app.exceptions.ValidationException;
 import app.model.Category;
 import app.model.Event;
 import app.model.Location;
 import app.model.User;
+import app.search.Autocomplete;
+import app.search.EventSearch;
+import app.utils.ConditionalGet;
+import app.utils.JsonStreaming;
+import app.utils.Pagination;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import io.javalin.http.Context;
 import io.javalin.http.HttpStatus;
 import io.javalin.http.Handler;
-import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 
 public class EventController implements IEventController {
+    private static final Logger log = LoggerFactory.getLogger(EventController.class);
+    private static final int IMPORT_CHUNK_SIZE = getEnvInt("EVENT_IMPORT_CHUNK_SIZE", 500); // events per transaction
+    private static final int IMPORT_MAX_REPORTED_ERRORS = 1000;
+    private static final int SEARCH_LIMIT_DEFAULT = getEnvInt("SEARCH_LIMIT_DEFAULT", 20);
+    private static final int SEARCH_LIMIT_MAX = getEnvInt("SEARCH_LIMIT_MAX", 100);
+    private static final int SEARCH_MAX_QUERY_LENGTH = 200;
+    private static final int AUTOCOMPLETE_LIMIT_DEFAULT = 8;
+    private static final int AUTOCOMPLETE_LIMIT_MAX = 20;
     EventDAO eventDAO = new EventDAO();
     ObjectMapper objectMapper = new ObjectMapper();
 
 
     EntityManagerFactory emf = HibernateConfig.getEntityManagerFactory();
-    EntityManager em = emf.createEntityManager();
 
     public EventController(EventDAO eventDAO) {
         this.eventDAO = eventDAO;
@@ -58,14 +89,39 @@ public class EventController implements IEventController {
     public Handler getAllEvents() {
         return (ctx) -> {
             ObjectNode returnObject = objectMapper.createObjectNode();
+            String etag = ConditionalGet.etag(EventDAO.getCatalogueVersion());
+            if (ConditionalGet.notModified(ctx, etag)) {
+                return;
+            }
             try {
+                // ?limit/?cursor or any filter switches to keyset pages; the plain list stays for existing clients
+                EventFilter filter = getEventFilter(ctx);
+                if (Pagination.isRequested(ctx) || !filter.isEmpty()) {
+                    int limit = Pagination.getLimit(ctx);
+                    List<Event> rows = eventDAO.getEventsPage(filter, Pagination.getAfterId(ctx), limit + 1);
+                    ConditionalGet.tag(ctx, etag);
+                    ctx.json(Pagination.toPage(rows, limit, Event::getEventId, EventDTO::new));
+                    return;
+                }
+
+                // Same bytes for everyone, prebuilt after each change
+                CatalogueSnapshot snapshots = CatalogueSnapshot.getInstance();
+                CatalogueSnapshot.Snapshot snapshot = snapshots != null ? snapshots.current() : null;
+                if (snapshot != null) {
+                    snapshots.write(ctx, snapshot);
+                    return;
+                }
+
                 List<Event> events = eventDAO.getAlleEvents();
 
                 List<EventDTO> eventDTOS = events.stream()
                         .map(EventDTO::new)
                         .collect(Collectors.toList());
 
+                ConditionalGet.tag(ctx, etag);
                 ctx.json(eventDTOS);
+            } catch (ValidationException | IllegalArgumentException | DateTimeParseException e) {
+                ctx.status(400).json(returnObject.put("msg", "Invalid query parameter: " + e.getMessage()));
             } catch (Exception e) {
                 ctx.status(500);
                 ctx.json(returnObject.put("msg", "Internal server error"));
@@ -74,6 +130,24 @@ public class EventController implements IEventController {
     }
 
 
+    @Override
+    public Handler exportEvents() {
+        return (ctx) -> {
+            ObjectNode returnObject = objectMapper.createObjectNode();
+            EventFilter filter;
+            try {
+                filter = getEventFilter(ctx);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                ctx.status(400).json(returnObject.put("msg", "Invalid query parameter: " + e.getMessage()));
+                return;
+            }
+            // Each row is converted and written while the next ones are still being read
+            JsonStreaming.<EventDTO>writeArray(ctx, consumer ->
+                    eventDAO.streamEvents(filter, event -> consumer.accept(new EventDTO(event))));
+        };
+    }
+
+
     @Override
     public Handler getEventById() {
         return (ctx) -> {
@@ -111,14 +185,125 @@ public class EventController implements IEventController {
                 // Set status as CREATED and return the created event
                 ctx.status(HttpStatus.CREATED).json(createdEventDTO);
             } catch (Exception e) {
-
-                e.printStackTrace();
+                log.error("Could not create event", e);
                 ctx.status(500).json(returnObject.put("msg", "Internal server error: " + e.getMessage()));
             }
         };
     }
 
 
+    // Bulk import: a JSON array of events, or NDJSON (Content-Type: application/x-ndjson) with one per line.
+    // Rows are validated as they are read and inserted IMPORT_CHUNK_SIZE at a time; a bad row is reported
+    // with its row/line number and doesn't stop the rest.
+    @Override
+    public Handler importEvents() {
+        return ctx -> {
+            ObjectNode returnObject = objectMapper.createObjectNode();
+            EventImport eventImport = new EventImport(eventDAO.getCategoryIds());
+            try {
+                JsonStreaming.readRows(ctx, eventImport);
+                eventImport.flush();
+            } catch (JsonProcessingException e) {
+                eventImport.flush(); // keep what was read before the broken part
+                ctx.status(400);
+                ctx.json(eventImport.toJson(returnObject.put("msg", "Malformed JSON after row " + eventImport.rows + ": " + e.getOriginalMessage())));
+                return;
+            }
+            ctx.status(eventImport.imported > 0 || eventImport.rows == 0 ? 200 : 400);
+            ctx.json(eventImport.toJson(returnObject));
+        };
+    }
+
+    private class EventImport implements JsonStreaming.RowReader {
+        private final Set<Integer> categoryIds;
+        private final List<Event> chunk = new ArrayList<>();
+        private final List<Integer> chunkRows = new ArrayList<>();
+        private final ArrayNode errors = objectMapper.createArrayNode();
+        private int rows;
+        private int imported;
+        private int failed;
+
+        EventImport(Set<Integer> categoryIds) {
+            this.categoryIds = categoryIds;
+        }
+
+        @Override
+        public void row(int rowNumber, JsonNode row) {
+            rows++;
+            EventDTO dto;
+            try {
+                dto = JsonStreaming.getMapper().treeToValue(row, EventDTO.class);
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                error(rowNumber, e instanceof JsonProcessingException jsonError ? jsonError.getOriginalMessage() : e.getMessage());
+                return;
+            }
+            String error = validateImportRow(dto);
+            if (error != null) {
+                error(rowNumber, error);
+                return;
+            }
+            Event event = convertToEntity(dto);
+            event.setEventId(0); // ids come from the sequence
+            chunk.add(event);
+            chunkRows.add(rowNumber);
+            if (chunk.size() >= IMPORT_CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        @Override
+        public void malformed(int rowNumber, String message) {
+            rows++;
+            error(rowNumber, message);
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            Map<Integer, String> chunkErrors = eventDAO.createAll(chunk);
+            imported += chunk.size() - chunkErrors.size();
+            chunkErrors.forEach((index, message) -> error(chunkRows.get(index), message));
+            chunk.clear();
+            chunkRows.clear();
+        }
+
+        private void error(int rowNumber, String message) {
+            failed++;
+            if (errors.size() < IMPORT_MAX_REPORTED_ERRORS) {
+                errors.addObject().put("row", rowNumber).put("msg", message);
+            }
+        }
+
+        private String validateImportRow(EventDTO dto) {
+            if (dto.getTitle() == null || dto.getTitle().isBlank()) {
+                return "Title is required";
+            }
+            if (dto.getDate() == null || dto.getTime() == null) {
+                return "Date and Time are required";
+            }
+            if (dto.getDuration() <= 0 || dto.getCapacity() <= 0) {
+                return "Duration and Capacity must be positive";
+            }
+            if (dto.getPrice() < 0) {
+                return "Price can't be negative";
+            }
+            if (dto.getCategoryId() != null && !categoryIds.contains(dto.getCategoryId())) {
+                return "Unknown category " + dto.getCategoryId();
+            }
+            return null;
+        }
+
+        ObjectNode toJson(ObjectNode returnObject) {
+            returnObject.put("rows", rows).put("imported", imported).put("failed", failed);
+            returnObject.set("errors", errors);
+            if (failed > errors.size()) {
+                returnObject.put("errorsNotShown", failed - errors.size());
+            }
+            return returnObject;
+        }
+    }
+
     @Override
     public Handler updateEvent() {
         return ctx -> {
@@ -154,6 +339,20 @@ public class EventController implements IEventController {
         };
     }
 
+    private EventFilter getEventFilter(Context ctx) {
+        EventFilter filter = new EventFilter();
+        String category = ctx.queryParam("category");
+        String location = ctx.queryParam("location");
+        String from = ctx.queryParam("from");
+        String to = ctx.queryParam("to");
+        filter.setCategoryId(category != null ? Integer.valueOf(category) : null);
+        filter.setStatus(ctx.queryParam("status"));
+        filter.setLocation(location != null ? Location.valueOf(location) : null);
+        filter.setFrom(from != null ? LocalDate.parse(from) : null);
+        filter.setTo(to != null ? LocalDate.parse(to) : null);
+        return filter;
+    }
+
     private void updateEventEntityWithDTO(Event event, EventDTO dto) {
         event.setTitle(dto.getTitle());
         event.setDescription(dto.getDescription());
@@ -174,7 +373,7 @@ public class EventController implements IEventController {
     }
 
     private Category findCategoryById(Integer categoryId) {
-        return em.find(Category.class, categoryId);
+        return eventDAO.getCategoryById(categoryId);
     }
 
     @Override
@@ -197,19 +396,43 @@ public class EventController implements IEventController {
         return ctx -> {
             try {
                 int eventId = Integer.parseInt(ctx.pathParam("event_id"));
+                if (Pagination.isRequested(ctx)) {
+                    int limit = Pagination.getLimit(ctx);
+                    List<User> rows = eventDAO.getRegistrationsForEventPage(eventId, Pagination.getAfterId(ctx), limit + 1);
+                    ctx.json(Pagination.toPage(rows, limit, User::getId, UserDTO::new));
+                    return;
+                }
                 List<User> registrations = eventDAO.getRegistrationsForEventById(eventId);
                 List<UserDTO> registrationDTOs = convertToUserDTO(registrations);
                 ctx.json(registrationDTOs);
             } catch (NumberFormatException e) {
                 ctx.status(400).json(Map.of("msg", "Invalid event ID format"));
+            } catch (ValidationException e) {
+                ctx.status(400).json(Map.of("msg", e.getMessage()));
             } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
                 ctx.status(500).json(Map.of("msg", "Internal server error"));
-                e.printStackTrace();
             }
         };
     }
 
 
+    @Override
+    public Handler exportRegistrationsForEvent() {
+        return ctx -> {
+            int eventId;
+            try {
+                eventId = Integer.parseInt(ctx.pathParam("event_id"));
+            } catch (NumberFormatException e) {
+                ctx.status(400).json(Map.of("msg", "Invalid event ID format"));
+                return;
+            }
+            JsonStreaming.<UserDTO>writeArray(ctx, consumer ->
+                    eventDAO.streamRegistrationsForEvent(eventId, user -> consumer.accept(new UserDTO(user))));
+        };
+    }
+
+
     @Override
     public Handler getRegistrationById() {
         return (ctx) -> {
@@ -218,14 +441,47 @@ public class EventController implements IEventController {
                 int id = Integer.parseInt(ctx.pathParam("event_id"));
                 ctx.json("There are " + eventDAO.getRegistrationsCountById(id) + " users registered");
             } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
                 ctx.status(500);
-                System.out.println(e);
                 ctx.json(returnObject.put("msg", "Internal server error"));
             }
         };
     }
 
 
+    // ?ids=1,2,3 -> {"1": 12, "2": 0, "3": 40}, unknown ids are left out
+    @Override
+    public Handler getRegistrationCounts() {
+        return (ctx) -> {
+            ObjectNode returnObject = objectMapper.createObjectNode();
+            try {
+                String ids = ctx.queryParam("ids");
+                if (ids == null || ids.isBlank()) {
+                    ctx.status(400);
+                    ctx.json(returnObject.put("msg", "Missing query parameter: ids"));
+                    return;
+                }
+                Set<Integer> eventIds = new LinkedHashSet<>();
+                for (String id : ids.split(",")) {
+                    eventIds.add(Integer.parseInt(id.trim()));
+                }
+                if (eventIds.size() > Pagination.MAX_PAGE_SIZE) {
+                    ctx.status(400);
+                    ctx.json(returnObject.put("msg", "At most " + Pagination.MAX_PAGE_SIZE + " ids per request"));
+                    return;
+                }
+                ctx.json(eventDAO.getRegistrationsCounts(eventIds));
+            } catch (NumberFormatException e) {
+                ctx.status(400);
+                ctx.json(returnObject.put("msg", "Invalid query parameter: " + e.getMessage()));
+            } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
+                ctx.status(500);
+                ctx.json(returnObject.put("msg", "Internal server error"));
+            }
+        };
+    }
+
     @Override
     public Handler registerUserForEvent() {
         return ctx -> {
@@ -236,23 +492,52 @@ public class EventController implements IEventController {
 
             int userId = requestBody.get("id").getAsInt();
 
-            eventDAO.addUserToEvent(userId, eventId);
+            RegistrationResult result = eventDAO.addUserToEvent(userId, eventId);
 
-            ctx.status(200).result("User registered for the event successfully");
+            switch (result) {
+                case ACCEPTED -> ctx.status(200).result("User registered for the event successfully");
+                case DUPLICATE -> ctx.status(409).result("User is already registered for the event");
+                case FULL -> ctx.status(409).result("The event is full");
+                case NOT_FOUND -> ctx.status(404).result("User or event not found");
+            }
         };
     }
 
     @Override
-    public Handler removeUserFromEvent() {
+    public Handler registerUserOrWaitlist() {
         return ctx -> {
+            ObjectNode returnObject = objectMapper.createObjectNode();
             int eventId = Integer.parseInt(ctx.pathParam("event_id"));
             JsonObject requestBody = JsonParser.parseString(ctx.body()).getAsJsonObject();
 
             int userId = requestBody.get("id").getAsInt();
 
-            eventDAO.removeUserEvent(userId, eventId);
+            RegistrationResult result = eventDAO.addUserToEventOrWaitlist(userId, eventId);
 
-            ctx.status(200).result("User removed for the event successfully");
+            switch (result) {
+                case ACCEPTED -> ctx.status(200).json(returnObject.put("status", result.name()));
+                case WAITLISTED -> ctx.status(202).json(returnObject
+                        .put("status", result.name())
+                        .put("position", eventDAO.getWaitlistPosition(userId, eventId)));
+                case DUPLICATE -> ctx.status(409).json(returnObject.put("msg", "User is already registered for the event"));
+                default -> ctx.status(404).json(returnObject.put("msg", "User or event not found"));
+            }
+        };
+    }
+
+    @Override
+    public Handler removeUserFromEvent() {
+        return ctx -> {
+            int eventId = Integer.parseInt(ctx.pathParam("event_id"));
+            JsonObject requestBody = JsonParser.parseString(ctx.body()).getAsJsonObject();
+
+            int userId = requestBody.get("id").getAsInt();
+
+            if (eventDAO.removeUserEvent(userId, eventId)) {
+                ctx.status(200).result("User removed for the event successfully");
+            } else {
+                ctx.status(404).result("User is not registered for the event");
+            }
         };
 
 
@@ -262,6 +547,10 @@ public class EventController implements IEventController {
     public Handler getAllEventsByCategory() {
         return (ctx) -> {
             ObjectNode returnObject = objectMapper.createObjectNode();
+            String etag = ConditionalGet.etag(EventDAO.getCatalogueVersion());
+            if (ConditionalGet.notModified(ctx, etag)) {
+                return;
+            }
             try {
                 int categoryId = Integer.parseInt(ctx.pathParam("category_id"));
                 List<Event> events = eventDAO.getEventsByCategory(categoryId);
@@ -270,12 +559,13 @@ public class EventController implements IEventController {
                         .map(EventDTO::new)
                         .collect(Collectors.toList());
 
+                ConditionalGet.tag(ctx, etag);
                 ctx.json(eventDTOS);
             } catch (NumberFormatException e) {
                 ctx.status(400).json(returnObject.put("msg", "Invalid category ID format"));
             } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
                 ctx.status(500);
-                System.out.println(e);
                 ctx.json(returnObject.put("msg", "Internal server error"));
             }
         };
@@ -285,6 +575,10 @@ public class EventController implements IEventController {
     public Handler getAllEventsByStatus() {
         return (ctx) -> {
             ObjectNode returnObject = objectMapper.createObjectNode();
+            String etag = ConditionalGet.etag(EventDAO.getCatalogueVersion());
+            if (ConditionalGet.notModified(ctx, etag)) {
+                return;
+            }
             try {
                 String status = ctx.pathParam("status");
                 List<Event> events = eventDAO.getEventByStatus(status);
@@ -293,14 +587,202 @@ public class EventController implements IEventController {
                         .map(EventDTO::new)
                         .collect(Collectors.toList());
 
+                ConditionalGet.tag(ctx, etag);
                 ctx.json(eventDTOS);
             } catch (NumberFormatException e) {
                 ctx.status(400).json(returnObject.put("msg", "Invalid category ID format"));
             } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
                 ctx.status(500);
-                System.out.println(e);
                 ctx.json(returnObject.put("msg", "Internal server error"));
             }
         };
     }
+
+    // GET /events/upcoming?limit=n&location=Aarhus: the next events to start, soonest first
+    @Override
+    public Handler getUpcomingEvents() {
+        return (ctx) -> eventsByStart(ctx, LocalDateTime.now(), null);
+    }
+
+    // GET /events/between?from=2024-05-01&to=2024-05-31T18:00&location=Aarhus: events starting in that range,
+    // in start order. A date alone is the start of the day for 'from' and the whole day for 'to', like the list filter.
+    @Override
+    public Handler getEventsBetween() {
+        return (ctx) -> {
+            LocalDateTime from;
+            LocalDateTime to;
+            try {
+                String fromParam = ctx.queryParam("from");
+                if (fromParam == null) {
+                    throw new ValidationException("from is required");
+                }
+                from = parseDateTime(fromParam, false);
+                String toParam = ctx.queryParam("to");
+                to = toParam != null ? parseDateTime(toParam, true) : null;
+                if (to != null && !to.isAfter(from)) {
+                    throw new ValidationException("to must be after from");
+                }
+            } catch (ValidationException | DateTimeParseException e) {
+                ctx.status(400).json(objectMapper.createObjectNode().put("msg", "Invalid query parameter: " + e.getMessage()));
+                return;
+            }
+            eventsByStart(ctx, from, to);
+        };
+    }
+
+    // From the in-memory EventTimeline, or from the database (same order, same cursors) until it has loaded
+    private void eventsByStart(Context ctx, LocalDateTime from, LocalDateTime to) {
+        ObjectNode returnObject = objectMapper.createObjectNode();
+        try {
+            String locationParam = ctx.queryParam("location");
+            Location location = locationParam != null ? Location.valueOf(locationParam) : null;
+            int limit = Pagination.getLimit(ctx);
+            EventStart after = Pagination.getAfterStart(ctx);
+            EventTimeline timeline = EventTimeline.getInstance();
+            if (timeline != null && timeline.isReady()) {
+                ctx.json(timeline.between(from, to, location, after, limit));
+            } else {
+                List<Event> rows = eventDAO.getEventsByStart(from, to, location, after, limit + 1);
+                ctx.json(Pagination.toTimePage(rows, limit, EventController::startOf, EventDTO::new));
+            }
+        } catch (ValidationException | IllegalArgumentException e) {
+            ctx.status(400).json(returnObject.put("msg", "Invalid query parameter: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
+            ctx.status(500);
+            ctx.json(returnObject.put("msg", "Internal server error"));
+        }
+    }
+
+    private static EventStart startOf(Event event) {
+        return new EventStart(event.getDate().toLocalDate().atTime(event.getTime()), event.getEventId());
+    }
+
+    // 2024-05-01 or 2024-05-01T10:00. A bare date as an end means the end of that day.
+    private static LocalDateTime parseDateTime(String value, boolean end) {
+        if (value.contains("T")) {
+            return LocalDateTime.parse(value);
+        }
+        LocalDate date = LocalDate.parse(value);
+        return end ? date.plusDays(1).atStartOfDay() : date.atStartOfDay();
+    }
+
+    // GET /events/filter?category=1&location=Aarhus&location=Odense&status=...&month=2024-05, answered from the
+    // in-memory FacetIndex with the facet counts for every dimension. Values may also be comma separated.
+    @Override
+    public Handler filterEvents() {
+        return (ctx) -> {
+            ObjectNode returnObject = objectMapper.createObjectNode();
+            FacetIndex facets = FacetIndex.getInstance();
+            if (facets == null || !facets.isReady()) {
+                ctx.status(503).json(returnObject.put("msg", "Filtering is starting, try again in a moment"));
+                return;
+            }
+            try {
+                FacetFilter filter = new FacetFilter();
+                queryParamValues(ctx, "category").forEach(value -> filter.getCategoryIds().add(Integer.valueOf(value)));
+                queryParamValues(ctx, "location").forEach(value -> filter.getLocations().add(Location.valueOf(value)));
+                filter.getStatuses().addAll(queryParamValues(ctx, "status"));
+                queryParamValues(ctx, "month").forEach(value -> filter.getMonths().add(YearMonth.parse(value)));
+                ctx.json(facets.filter(filter, Pagination.getAfterId(ctx), Pagination.getLimit(ctx)));
+            } catch (ValidationException | IllegalArgumentException | DateTimeParseException e) {
+                ctx.status(400).json(returnObject.put("msg", "Invalid query parameter: " + e.getMessage()));
+            } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
+                ctx.status(500);
+                ctx.json(returnObject.put("msg", "Internal server error"));
+            }
+        };
+    }
+
+    // ?x=a&x=b and ?x=a,b both give [a, b]
+    private static List<String> queryParamValues(Context ctx, String name) {
+        List<String> values = new ArrayList<>();
+        for (String param : ctx.queryParams(name)) {
+            for (String value : param.split(",")) {
+                if (!value.isBlank()) {
+                    values.add(value.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    // GET /events/search?q=...&limit=n, ranked matches on title, instructor and description
+    @Override
+    public Handler searchEvents() {
+        return (ctx) -> {
+            ObjectNode returnObject = objectMapper.createObjectNode();
+            EventSearch search = EventSearch.getInstance();
+            if (search == null || !search.isReady()) {
+                ctx.status(503).json(returnObject.put("msg", "Search is starting, try again in a moment"));
+                return;
+            }
+            String query = ctx.queryParam("q");
+            if (query == null || query.isBlank()) {
+                ctx.status(400).json(returnObject.put("msg", "Missing search query q"));
+                return;
+            }
+            if (query.length() > SEARCH_MAX_QUERY_LENGTH) {
+                ctx.status(400).json(returnObject.put("msg", "Search query is longer than " + SEARCH_MAX_QUERY_LENGTH + " characters"));
+                return;
+            }
+            try {
+                String limitParam = ctx.queryParam("limit");
+                int limit = limitParam != null ? Integer.parseInt(limitParam) : SEARCH_LIMIT_DEFAULT;
+                if (limit < 1) {
+                    throw new ValidationException("limit must be at least 1");
+                }
+                ctx.json(search.search(query, Math.min(limit, SEARCH_LIMIT_MAX)));
+            } catch (ValidationException | NumberFormatException e) {
+                ctx.status(400).json(returnObject.put("msg", "Invalid query parameter: " + e.getMessage()));
+            } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
+                ctx.status(500);
+                ctx.json(returnObject.put("msg", "Internal server error"));
+            }
+        };
+    }
+
+    // GET /events/autocomplete?q=yo&limit=n, the most wanted titles, instructors and categories starting with q
+    @Override
+    public Handler autocomplete() {
+        return (ctx) -> {
+            ObjectNode returnObject = objectMapper.createObjectNode();
+            Autocomplete autocomplete = Autocomplete.getInstance();
+            if (autocomplete == null || !autocomplete.isReady()) {
+                ctx.status(503).json(returnObject.put("msg", "Autocomplete is starting, try again in a moment"));
+                return;
+            }
+            String query = ctx.queryParam("q");
+            if (query == null || query.isBlank()) {
+                ctx.status(400).json(returnObject.put("msg", "Missing query q"));
+                return;
+            }
+            if (query.length() > SEARCH_MAX_QUERY_LENGTH) {
+                ctx.status(400).json(returnObject.put("msg", "Query is longer than " + SEARCH_MAX_QUERY_LENGTH + " characters"));
+                return;
+            }
+            try {
+                String limitParam = ctx.queryParam("limit");
+                int limit = limitParam != null ? Integer.parseInt(limitParam) : AUTOCOMPLETE_LIMIT_DEFAULT;
+                if (limit < 1) {
+                    throw new ValidationException("limit must be at least 1");
+                }
+                ctx.json(autocomplete.complete(query, Math.min(limit, AUTOCOMPLETE_LIMIT_MAX)));
+            } catch (ValidationException | NumberFormatException e) {
+                ctx.status(400).json(returnObject.put("msg", "Invalid query parameter: " + e.getMessage()));
+            } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
+                ctx.status(500);
+                ctx.json(returnObject.put("msg", "Internal server error"));
+            }
+        };
+    }
+
+    private static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
 }
@@ -0,0 +1,14 @@
+package app.controllers;
+
+import io.javalin.http.Handler;
+
+public interface IAdminController {
+    Handler getPoolStats();
+    Handler getSessionStats();
+    Handler getCacheStats();
+    Handler getTokenStats();
+    Handler getPasswordHasherStats();
+    Handler getCatalogueStats();
+    Handler getAutocompleteStats();
+    Handler getMetrics();
+}
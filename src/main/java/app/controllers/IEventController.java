@@ -7,18 +7,29 @@ import io.javalin.http.Handler;
 
 public interface IEventController {
     Handler getAllEvents();
+    Handler exportEvents();
     Handler getEventById();
     Handler createEvent();
+    Handler importEvents();
     Handler updateEvent();
     Handler deleteEvent();
     Handler getAllRegistrationsForEvent();
+    Handler exportRegistrationsForEvent();
 
     Handler getRegistrationById();
+    Handler getRegistrationCounts();
 
     Handler registerUserForEvent();
 
+    Handler registerUserOrWaitlist();
+
     Handler removeUserFromEvent();
 
     Handler getAllEventsByCategory();
     Handler getAllEventsByStatus();
+    Handler getUpcomingEvents();
+    Handler getEventsBetween();
+    Handler filterEvents();
+    Handler searchEvents();
+    Handler autocomplete();
 }
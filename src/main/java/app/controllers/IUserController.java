@@ -5,6 +5,7 @@ public interface IUserController {
 
     Handler getAllUsers();
     Handler createUser();
+    Handler importUsers();
 
     Handler getUserById();
 
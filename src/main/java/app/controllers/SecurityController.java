@@ -8,39 +8,44 @@ import app.exceptions.ApiException;
 import app.exceptions.EntityNotFoundException;
 import app.exceptions.NotAuthorizedException;
 import app.model.User;
+import app.security.TokenVerifier;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.nimbusds.jose.*;
 import com.nimbusds.jose.crypto.MACSigner;
-import com.nimbusds.jose.crypto.MACVerifier;
 import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
 import io.javalin.http.Handler;
 import io.javalin.http.HttpStatus;
 import io.javalin.validation.ValidationException;
 import jakarta.persistence.EntityExistsException;
-import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.security.SecureRandom;
 import java.math.BigInteger;
-import java.text.ParseException;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
 
 public class SecurityController implements ISecurityController{
+    private static final Logger log = LoggerFactory.getLogger(SecurityController.class);
 
-    EntityManagerFactory emf = HibernateConfig.getEntityManagerFactory();
-    UserDAO securityDAO = new UserDAO(emf);
+    UserDAO securityDAO;
+
+    public SecurityController() {
+        this(new UserDAO(HibernateConfig.getEntityManagerFactory()));
+    }
+
+    // Token and role checks never touch the DAO, so benchmarks can pass null here and run without a database
+    public SecurityController(UserDAO securityDAO) {
+        this.securityDAO = securityDAO;
+    }
 
     ObjectMapper objectMapper = new ObjectMapper();
-    private final String SECRET_KEY = "DetteErEnHemmeligNøgleTilAtDanneJWT_Tokensmed";
     @Override
     public Handler register() {
         return (ctx) -> {
@@ -49,7 +54,7 @@ public class SecurityController implements ISecurityController{
                 UserDTO userInput = ctx.bodyAsClass(UserDTO.class);
                 User created = securityDAO.createUser(userInput.getName(), userInput.getPassword(), userInput.getEmail(), userInput.getPhoneNumber());
 
-                String token = createToken(new UserDTO(created));
+                String token = createToken(toTokenUser(created));
                 ctx.status(HttpStatus.CREATED).json(new TokenDTO(token, userInput.getName()));
             } catch (EntityExistsException e) {
                 ctx.status(HttpStatus.UNPROCESSABLE_CONTENT);
@@ -82,7 +87,7 @@ public class SecurityController implements ISecurityController{
                 User updatedUser = securityDAO.UpdatePassword(verify, newPassword);
 
                 // Create a token
-                String token = createToken(new UserDTO(updatedUser));
+                String token = createToken(toTokenUser(updatedUser));
 
                 // Respond with the token and user's email
                 ctx.status(200).json(new TokenDTO(token, user.getEmail()));
@@ -99,25 +104,24 @@ public class SecurityController implements ISecurityController{
     public Handler login() {
         return (ctx) -> {
             ObjectNode returnObject = objectMapper.createObjectNode(); // for sending json messages back to the client
-            String rawJson = ctx.body();
-            System.out.println("Received raw JSON payload: " + rawJson);
 
             try {
-                // Now, proceed with the usual deserialization and processing
                 UserDTO user = ctx.bodyAsClass(UserDTO.class);
-                System.out.println("USER IN LOGIN: " + user);
-
 
                 User verifiedUserEntity = securityDAO.verifyUser(user.getName(), user.getPassword());
-                String token = createToken(new UserDTO(verifiedUserEntity));
+                String token = createToken(toTokenUser(verifiedUserEntity));
                 ctx.status(200).json(new TokenDTO(token, user.getName()));
 
             } catch (EntityNotFoundException | ValidationException e) {
                 ctx.status(401);
-                System.out.println(e.getMessage());
+                log.debug("Login failed: {}", e.getMessage());
+                ctx.json(returnObject.put("msg", e.getMessage()));
+            } catch (ApiException e) {
+                // 503 from the PasswordHasher when it is saturated
+                ctx.status(e.getStatusCode());
                 ctx.json(returnObject.put("msg", e.getMessage()));
             } catch (Exception e) {
-            e.printStackTrace(); // Log the stack trace to the console
+            log.error("Login failed", e);
             ctx.status(500).json(Map.of("error", "Internal server error: " + e.getMessage()));
         }
 
@@ -138,7 +142,7 @@ public class SecurityController implements ISecurityController{
         } else {
             ISSUER = "Thomas Hartmann";
             TOKEN_EXPIRE_TIME = "1800000"; // 30 minutes in milliseconds
-            SECRET_KEY = this.SECRET_KEY;
+            SECRET_KEY = TokenVerifier.getSecretKey();
         }
         return createToken(user, ISSUER, TOKEN_EXPIRE_TIME, SECRET_KEY);
     }
@@ -149,7 +153,7 @@ public class SecurityController implements ISecurityController{
                     .subject(user.getName())
                     .issuer(ISSUER)
                     .claim("name", user.getName())
-                    .claim("roles", user.getRoles().stream().reduce("", (s1, s2) -> s1 + "," + s2))
+                    .claim("roles", String.join(",", user.getRoles()))
                     .expirationTime(new Date(new Date().getTime() + Integer.parseInt(TOKEN_EXPIRE_TIME)))
                     .build();
             Payload payload = new Payload(claimsSet.toJSONObject());
@@ -161,7 +165,7 @@ public class SecurityController implements ISecurityController{
             return jwsObject.serialize();
 
         } catch (JOSEException e) {
-            e.printStackTrace();
+            log.error("Could not sign token", e);
             throw new ApiException(500, "Could not create token");
         }
     }
@@ -186,75 +190,42 @@ public class SecurityController implements ISecurityController{
         // Checked in 'before filter' -> Check for Authorization header to find token.
         // Find user inside the token, forward the ctx object with userDTO on attribute
         // When ctx hits the endpoint it will have the user on the attribute to check for roles (ApplicationConfig -> accessManager)
-        ObjectNode returnObject = objectMapper.createObjectNode();
+        // Requests without a (valid) token just get no user, the accessManager then only lets them through to Role.ANYONE routes.
         return (ctx) -> {
             if(ctx.method().toString().equals("OPTIONS")) {
                 ctx.status(200);
                 return;
             }
+            if (ctx.attribute("user") != null) {
+                return; // already done by another before handler for this request
+            }
             String header = ctx.header("Authorization");
             if (header == null) {
-                ctx.status(HttpStatus.FORBIDDEN).json(returnObject.put("msg", "Authorization header missing"));
                 return;
             }
-            String token = header.split(" ")[1];
-            if (token == null) {
-                ctx.status(HttpStatus.FORBIDDEN).json(returnObject.put("msg", "Authorization header malformed"));
+            String[] parts = header.split(" ");
+            if (parts.length != 2 || !parts[0].equalsIgnoreCase("Bearer")) {
                 return;
             }
-            UserDTO verifiedTokenUser = verifyToken(token);
-            if (verifiedTokenUser == null) {
-                ctx.status(HttpStatus.FORBIDDEN).json(returnObject.put("msg", "Invalid User or Token"));
+            try {
+                ctx.attribute("user", verifyToken(parts[1]));
+            } catch (ApiException e) {
+                // Expired or forged token, treated like no token at all
             }
-            System.out.println("USER IN AUTHENTICATE: " + verifiedTokenUser);
-            ctx.attribute("user", verifiedTokenUser);
         };
     }
     @Override
     public UserDTO verifyToken(String token) {
-        boolean IS_DEPLOYED = (System.getenv("DEPLOYED") != null);
-        String SECRET = IS_DEPLOYED ? System.getenv("SECRET_KEY") : SECRET_KEY;
-
         try {
-            if (tokenIsValid(token, SECRET) && tokenNotExpired(token)) {
-                return getUserWithRolesFromToken(token);
-            } else {
-                throw new NotAuthorizedException(403, "Token is not valid");
-            }
-        } catch (ParseException | JOSEException | NotAuthorizedException e) {
-            e.printStackTrace();
+            return TokenVerifier.getInstance().verify(token);
+        } catch (NotAuthorizedException e) {
             throw new ApiException(HttpStatus.UNAUTHORIZED.getCode(), "Unauthorized. Could not verify token");
         }
     }
-    public boolean tokenIsValid(String token, String secret) throws ParseException, JOSEException, NotAuthorizedException {
-        SignedJWT jwt = SignedJWT.parse(token);
-        if (jwt.verify(new MACVerifier(secret)))
-            return true;
-        else
-            throw new NotAuthorizedException(403, "Token is not valid");
-    }
-    public boolean tokenNotExpired(String token) throws ParseException, NotAuthorizedException {
-        if (timeToExpire(token) > 0)
-            return true;
-        else
-            throw new NotAuthorizedException(403, "Token has expired");
-    }
-    public UserDTO getUserWithRolesFromToken(String token) throws ParseException {
-        // Return a user with Set of roles as strings
-        SignedJWT jwt = SignedJWT.parse(token);
-        String roles = jwt.getJWTClaimsSet().getClaim("roles").toString();
-        String username = jwt.getJWTClaimsSet().getClaim("username").toString();
-
-        Set<String> rolesSet = Arrays
-                .stream(roles.split(","))
-                .collect(Collectors.toSet());
-        return new UserDTO(username, rolesSet);
-    }
-    public int timeToExpire(String token) throws ParseException, NotAuthorizedException {
-        SignedJWT jwt = SignedJWT.parse(token);
-        return (int) (jwt.getJWTClaimsSet().getExpirationTime().getTime() - new Date().getTime());
-    }
-
-
 
+    // The token carries the user's roles, so the user entity has to be turned into a DTO with them
+    private UserDTO toTokenUser(User user) {
+        Set<String> roles = user.getRolesAsStrings();
+        return new UserDTO(user.getName(), roles != null ? roles : Set.of());
+    }
 }
@@ -3,19 +3,37 @@ package app.controllers;
 import app.config.HibernateConfig;
 import app.dao.UserDAO;
 import app.dto.UserDTO;
+import app.exceptions.ApiException;
+import app.exceptions.ValidationException;
+import app.model.Role;
 import app.model.User;
+import app.security.PasswordHasher;
+import app.utils.JsonStreaming;
+import app.utils.Pagination;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import io.javalin.http.Handler;
 import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class UserController implements IUserController{
+    private static final int IMPORT_CHUNK_SIZE = getEnvInt("USER_IMPORT_CHUNK_SIZE", 200); // users hashed and inserted together
+    private static final Logger log = LoggerFactory.getLogger(UserController.class);
 
     UserDAO userDAO = new UserDAO(HibernateConfig.getEntityManagerFactory());
     ObjectMapper objectMapper = new ObjectMapper();
@@ -34,6 +52,13 @@ public class UserController implements IUserController{
     public Handler getAllUsers() {
         return (ctx) -> {
             try {
+                if (Pagination.isRequested(ctx)) {
+                    int limit = Pagination.getLimit(ctx);
+                    List<User> rows = userDAO.getUsersPage(Pagination.getAfterId(ctx), limit + 1);
+                    ctx.json(Pagination.toPage(rows, limit, User::getId, this::convertToUserDTO));
+                    return;
+                }
+
                 // Fetch all users from the database
                 List<User> users = userDAO.getAlleUser();
 
@@ -44,10 +69,13 @@ public class UserController implements IUserController{
 
 
                 ctx.json(userDTOs);
+            } catch (ValidationException | NumberFormatException e) {
+                ctx.status(400);
+                ctx.json(Map.of("msg", "Invalid query parameter: " + e.getMessage()));
             } catch (Exception e) {
                 ctx.status(500);
+                log.error("Could not list users", e);
                 ctx.json(Map.of("msg", "Internal server error"));
-                System.out.println(e);
             }
         };
     }
@@ -62,6 +90,9 @@ public class UserController implements IUserController{
                 User newUser = userDAO.createUser(userDTO.getName(), userDTO.getPassword(), userDTO.getEmail(), userDTO.getPhoneNumber());
                 ctx.status(201);
                 ctx.json(newUser);
+            } catch (ApiException e) {
+                ctx.status(e.getStatusCode());
+                ctx.json(e.getMessage());
             } catch (Exception e) {
 
                 ctx.status(500); // Internal Server Error
@@ -70,6 +101,163 @@ public class UserController implements IUserController{
         };
     }
 
+    // Bulk provisioning: a JSON array of users, or NDJSON (Content-Type: application/x-ndjson) with one per line.
+    // The answer is NDJSON written while the import runs: an "error" line per rejected row, a "progress" line
+    // per chunk and a "done" line at the end. Rows without roles get "user", like createUser.
+    @Override
+    public Handler importUsers() {
+        return (ctx) -> {
+            ctx.contentType("application/x-ndjson");
+            try (JsonGenerator out = JsonStreaming.getMapper().getFactory().createGenerator(ctx.outputStream())) {
+                out.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET); // Javalin closes the response
+                out.setRootValueSeparator(null); // every line ends with a newline of its own, see writeLine
+                UserImport userImport = new UserImport(userDAO.getRoles(), out);
+                try {
+                    JsonStreaming.readRows(ctx, userImport);
+                    userImport.flush();
+                } catch (JsonProcessingException e) {
+                    userImport.flush(); // keep what was read before the broken part
+                    userImport.writeError(userImport.rows, "Malformed JSON after row " + userImport.rows + ": " + e.getOriginalMessage());
+                }
+                userImport.writeLine(userImport.progress("done"));
+            }
+        };
+    }
+
+    private class UserImport implements JsonStreaming.RowReader {
+        private final Map<String, Role> roles;
+        private final JsonGenerator out;
+        private final Set<String> namesSeen = new HashSet<>();
+        private final List<User> chunk = new ArrayList<>();
+        private final List<String> passwords = new ArrayList<>();
+        private final List<Integer> chunkRows = new ArrayList<>();
+        private int rows;
+        private int created;
+        private int failed;
+
+        UserImport(Map<String, Role> roles, JsonGenerator out) {
+            this.roles = roles;
+            this.out = out;
+        }
+
+        @Override
+        public void row(int rowNumber, JsonNode row) {
+            rows++;
+            UserDTO dto;
+            try {
+                dto = JsonStreaming.getMapper().treeToValue(row, UserDTO.class);
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                writeError(rowNumber, e instanceof JsonProcessingException jsonError ? jsonError.getOriginalMessage() : e.getMessage());
+                return;
+            }
+            String error = validateImportRow(dto);
+            if (error != null) {
+                writeError(rowNumber, error);
+                return;
+            }
+            User user = new User(); // not the constructors, they hash one at a time
+            user.setName(dto.getName());
+            user.setEmail(dto.getEmail());
+            user.setPhoneNumber(dto.getPhoneNumber() != null ? dto.getPhoneNumber() : 0);
+            Set<String> roleNames = dto.getRoles() == null || dto.getRoles().isEmpty() ? Set.of("user") : dto.getRoles();
+            for (String roleName : roleNames) {
+                user.getRoles().add(roles.get(roleName));
+            }
+            chunk.add(user);
+            passwords.add(dto.getPassword());
+            chunkRows.add(rowNumber);
+            if (chunk.size() >= IMPORT_CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        @Override
+        public void malformed(int rowNumber, String message) {
+            rows++;
+            writeError(rowNumber, message);
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            // Names already in the database, checked for the whole chunk with one query
+            Set<String> existing = userDAO.getExistingNames(chunk.stream().map(User::getName).toList());
+            List<String> hashes = PasswordHasher.getInstance().hashAll(passwords);
+            List<User> users = new ArrayList<>(chunk.size());
+            List<Integer> userRows = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                User user = chunk.get(i);
+                if (existing.contains(user.getName())) {
+                    writeError(chunkRows.get(i), "User already exists: " + user.getName());
+                    continue;
+                }
+                user.setPassword(hashes.get(i));
+                users.add(user);
+                userRows.add(chunkRows.get(i));
+            }
+            if (!users.isEmpty()) {
+                Map<Integer, String> errors = userDAO.createAll(users);
+                created += users.size() - errors.size();
+                errors.forEach((index, message) -> writeError(userRows.get(index), message));
+            }
+            chunk.clear();
+            passwords.clear();
+            chunkRows.clear();
+            writeLine(progress("progress"));
+        }
+
+        private String validateImportRow(UserDTO dto) {
+            if (dto.getName() == null || dto.getName().isBlank()) {
+                return "name is required";
+            }
+            if (dto.getPassword() == null || dto.getPassword().isEmpty()) {
+                return "password is required";
+            }
+            if (dto.getRoles() != null) {
+                for (String roleName : dto.getRoles()) {
+                    if (!roles.containsKey(roleName)) {
+                        return "Unknown role: " + roleName;
+                    }
+                }
+            }
+            if ((dto.getRoles() == null || dto.getRoles().isEmpty()) && !roles.containsKey("user")) {
+                return "The user role doesn't exist yet";
+            }
+            if (!namesSeen.add(dto.getName())) {
+                return "Duplicate name in this import: " + dto.getName();
+            }
+            return null;
+        }
+
+        ObjectNode progress(String type) {
+            return objectMapper.createObjectNode()
+                    .put("type", type)
+                    .put("rows", rows)
+                    .put("created", created)
+                    .put("failed", failed);
+        }
+
+        void writeError(int rowNumber, String message) {
+            failed++;
+            writeLine(objectMapper.createObjectNode()
+                    .put("type", "error")
+                    .put("row", rowNumber)
+                    .put("msg", message));
+        }
+
+        // Flushed right away, the client sees progress while the next chunk is hashed
+        void writeLine(ObjectNode line) {
+            try {
+                out.writeObject(line);
+                out.writeRaw('\n');
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     @Override
     public Handler getUserById() {
         return (ctx) -> {
@@ -80,8 +268,8 @@ public class UserController implements IUserController{
                 UserDTO userDTO= convertToUserDTO(userById);
                 ctx.json(userDTO);
             } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
                 ctx.status(500);
-                System.out.println(e);
                 ctx.json(returnObject.put("msg", "Internal server error"));
             }
         };
@@ -125,8 +313,8 @@ public class UserController implements IUserController{
 
                 ctx.json(204);
             } catch (Exception e) {
+                log.error("Could not handle {} {}", ctx.method(), ctx.path(), e);
                 ctx.status(500);
-                System.out.println(e);
                 ctx.json("Internal server error");
             }
         };
@@ -140,6 +328,8 @@ public class UserController implements IUserController{
         };
     }
 
-
-
+    private static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
 }
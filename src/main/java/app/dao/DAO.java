@@ -1,44 +1,338 @@
 package app.dao;
 
-
-
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/*
+
+In-memory IDAO for demos, fast tests and cache-backed read paths. Subclasses only say where the id is:
+
+    class EventMemoryDAO extends DAO<Event> {
+        final Index<Integer> byCategory = addIndex("category", event -> event.getCategory().getCategoryId());
+
+        protected int getId(Event event) { return event.getEventId(); }
+        protected void setId(Event event, int id) { event.setEventId(id); }
+    }
 
-public abstract class DAO<T> {
-    protected List<T> db = new ArrayList<>();
+The entities are spread over STRIPES stripes by id. Each stripe has its own IntObjectMap (primitive int
+keys, O(1) lookups) and its own lock, so writers on different stripes don't wait for each other and a
+reader only ever waits for a writer on its own stripe.
+
+Secondary indexes (addIndex) are kept per stripe as well and updated under the same lock as the entity
+itself, so an index never points at a version of an entity that the id lookup doesn't return.
+
+getAll() and Index.find() lock every stripe for reading (always in the same order, writers only ever
+hold one) and copy what they need before letting go. The result is a snapshot: a write is either in it
+completely or not at all, never half of a multi-stripe state.
+
+*/
+public abstract class DAO<T> implements IDAO<T> {
+    private static final int STRIPES = 16; // power of two
+
+    private final Stripe<T>[] stripes;
+    private final List<Index<?>> indexes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    protected DAO() {
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
 
+    protected abstract int getId(T entity);
+
+    // Override to let create() number entities that come in with id 0, like the database would
+    protected void setId(T entity, int id) {
+    }
+
+    @Override
     public List<T> getAll() {
-        return new ArrayList<>(db);
+        List<T> all;
+        long[] stamps = readLockAll();
+        try {
+            int size = 0;
+            for (Stripe<T> stripe : stripes) {
+                size += stripe.entities.size();
+            }
+            all = new ArrayList<>(size);
+            for (Stripe<T> stripe : stripes) {
+                stripe.entities.forEachValue(all::add);
+            }
+        } finally {
+            unlockAll(stamps);
+        }
+        // Same order as the database would give for ORDER BY id
+        all.sort(Comparator.comparingInt(this::getId));
+        return all;
     }
 
+    @Override
     public T getById(int id) {
-        return db.stream()
-                .filter(entity -> getId(entity) == id)
-                .findFirst()
-                .orElse(null);
+        Stripe<T> stripe = stripeOf(id);
+        long stamp = stripe.lock.readLock();
+        try {
+            return stripe.entities.get(id);
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
     }
 
+    /*
+    Stores a new entity. An entity with id 0 gets the next free id (if setId() is overridden), one with an
+    id keeps it and moves the numbering past it. Like a primary key, an id that is already stored is
+    rejected with an IllegalArgumentException, use save() to replace.
+    */
+    @Override
     public T create(T entity) {
-        db.add(entity);
+        int id = getId(entity);
+        if (id == 0) {
+            do {
+                setId(entity, lastId.incrementAndGet());
+                id = getId(entity);
+            } while (id != 0 && !insert(id, entity)); // an explicit id got there first, draw the next one
+            if (id != 0) {
+                return entity;
+            }
+        }
+        lastId.accumulateAndGet(id, Math::max); // before the insert, so no id drawn after it can collide
+        if (!insert(id, entity)) {
+            throw new IllegalArgumentException("An entity with id " + id + " already exists");
+        }
+        return entity;
+    }
+
+    // Stores the entity under its id, replacing any entity with the same id. For mirrors of another store.
+    public T save(T entity) {
+        int id = getId(entity);
+        lastId.accumulateAndGet(id, Math::max);
+        Stripe<T> stripe = stripeOf(id);
+        long stamp = stripe.lock.writeLock();
+        try {
+            T previous = stripe.entities.put(id, entity);
+            reindex(stripe, id, previous, entity);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
         return entity;
     }
 
+    private boolean insert(int id, T entity) {
+        Stripe<T> stripe = stripeOf(id);
+        long stamp = stripe.lock.writeLock();
+        try {
+            if (stripe.entities.get(id) != null) {
+                return false;
+            }
+            stripe.entities.put(id, entity);
+            reindex(stripe, id, null, entity);
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    // Replaces the stored entity with the same id, does nothing if there is none
+    @Override
     public T update(T entity) {
-        Optional<T> existing = db.stream()
-                .filter(e -> getId(e) == getId(entity))
-                .findFirst();
-        existing.ifPresent(e -> {
-            int index = db.indexOf(e);
-            db.set(index, entity);
-        });
+        int id = getId(entity);
+        Stripe<T> stripe = stripeOf(id);
+        long stamp = stripe.lock.writeLock();
+        try {
+            if (stripe.entities.get(id) != null) {
+                T previous = stripe.entities.put(id, entity);
+                reindex(stripe, id, previous, entity);
+            }
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
         return entity;
     }
 
+    @Override
     public void delete(int id) {
-        db.removeIf(entity -> getId(entity) == id);
+        Stripe<T> stripe = stripeOf(id);
+        long stamp = stripe.lock.writeLock();
+        try {
+            T previous = stripe.entities.remove(id);
+            reindex(stripe, id, previous, null);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
     }
 
-    protected abstract int getId(T entity);
+    public int size() {
+        int size = 0;
+        for (Stripe<T> stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.entities.size();
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /*
+    Adds a secondary index on whatever key the function returns (null means the entity isn't indexed).
+    Entities that are already stored are indexed right away, so it can be added at any time. An entity is
+    re-keyed when it is created/updated, so change it in place and then call update(), like with JPA.
+    */
+    public <K> Index<K> addIndex(String name, Function<T, K> keyOf) {
+        long[] stamps = writeLockAll();
+        try {
+            Index<K> index = new Index<>(name, keyOf, indexes.size());
+            for (Stripe<T> stripe : stripes) {
+                IndexStripe<T> indexStripe = new IndexStripe<>();
+                stripe.indexes.add(indexStripe);
+                stripe.entities.forEachValue(entity -> index.add(indexStripe, getId(entity), entity));
+            }
+            indexes.add(index);
+            return index;
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    public Index<?> getIndex(String name) {
+        for (Index<?> index : indexes) {
+            if (index.name.equals(name)) {
+                return index;
+            }
+        }
+        throw new IllegalArgumentException("No index named " + name);
+    }
+
+    // Called with the stripe's write lock held
+    private void reindex(Stripe<T> stripe, int id, T previous, T current) {
+        for (Index<?> index : indexes) {
+            IndexStripe<T> indexStripe = stripe.indexes.get(index.position);
+            if (previous != null) {
+                indexStripe.remove(id);
+            }
+            if (current != null) {
+                index.add(indexStripe, id, current);
+            }
+        }
+    }
+
+    private Stripe<T> stripeOf(int id) {
+        int hash = id * 0x9E3779B9;
+        return stripes[hash >>> (32 - Integer.numberOfTrailingZeros(STRIPES))];
+    }
+
+    private long[] readLockAll() {
+        long[] stamps = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stamps[i] = stripes[i].lock.readLock();
+        }
+        return stamps;
+    }
+
+    private long[] writeLockAll() {
+        long[] stamps = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stamps[i] = stripes[i].lock.writeLock();
+        }
+        return stamps;
+    }
+
+    private void unlockAll(long[] stamps) {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].lock.unlock(stamps[i]);
+        }
+    }
+
+    private static class Stripe<T> {
+        final StampedLock lock = new StampedLock();
+        final IntObjectMap<T> entities = new IntObjectMap<>();
+        // One per index, in the order the indexes were added
+        final List<IndexStripe<T>> indexes = new ArrayList<>();
+    }
+
+    // One index's part of a stripe
+    private static class IndexStripe<T> {
+        final Map<Object, IntObjectMap<T>> byKey = new HashMap<>();
+        // The key each entity was indexed under, the entity itself may have been changed in place since
+        final IntObjectMap<Object> keyById = new IntObjectMap<>();
+
+        void remove(int id) {
+            Object key = keyById.remove(id);
+            if (key == null) {
+                return;
+            }
+            IntObjectMap<T> entities = byKey.get(key);
+            entities.remove(id);
+            if (entities.isEmpty()) {
+                byKey.remove(key);
+            }
+        }
+    }
+
+    public class Index<K> {
+        private final String name;
+        private final Function<T, K> keyOf;
+        private final int position;
+
+        private Index(String name, Function<T, K> keyOf, int position) {
+            this.name = name;
+            this.keyOf = keyOf;
+            this.position = position;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // The entities with this key, ordered by id
+        public List<T> find(K key) {
+            List<T> found = new ArrayList<>();
+            long[] stamps = readLockAll();
+            try {
+                for (Stripe<T> stripe : stripes) {
+                    IntObjectMap<T> entities = stripe.indexes.get(position).byKey.get(key);
+                    if (entities != null) {
+                        entities.forEachValue(found::add);
+                    }
+                }
+            } finally {
+                unlockAll(stamps);
+            }
+            found.sort(Comparator.comparingInt(DAO.this::getId));
+            return found;
+        }
+
+        public int count(K key) {
+            int count = 0;
+            long[] stamps = readLockAll();
+            try {
+                for (Stripe<T> stripe : stripes) {
+                    IntObjectMap<T> entities = stripe.indexes.get(position).byKey.get(key);
+                    if (entities != null) {
+                        count += entities.size();
+                    }
+                }
+            } finally {
+                unlockAll(stamps);
+            }
+            return count;
+        }
+
+        private void add(IndexStripe<T> indexStripe, int id, T entity) {
+            K key = keyOf.apply(entity);
+            if (key != null) {
+                indexStripe.byKey.computeIfAbsent(key, k -> new IntObjectMap<>(4)).put(id, entity);
+                indexStripe.keyById.put(id, key);
+            }
+        }
+    }
 }
@@ -0,0 +1,10 @@
+package app.dao;
+
+import java.util.Set;
+
+// Registered with EventDAO.addChangeListener, called on the writing thread after the change is committed.
+// Keep it quick, the request that made the change is still waiting for its response.
+public interface EventChangeListener {
+    // eventIds: the events that were created, updated or deleted by this change
+    void eventsChanged(long catalogueVersion, Set<Integer> eventIds);
+}
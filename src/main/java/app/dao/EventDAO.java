@@ -1,17 +1,43 @@
 package app.dao;
 
 
+import app.model.Category;
 import app.model.Event;
+import app.model.EventSeats;
+import app.model.Location;
 import app.model.User;
 import jakarta.persistence.*;
-
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
+import org.hibernate.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class EventDAO {
+    // Query cache region for the finders below, configured in ehcache.xml
+    public static final String QUERY_CACHE_REGION = "event-queries";
+    private static final int STREAM_FETCH_SIZE = 500;
     private static EventDAO instance;
     private static EntityManagerFactory emf;
+    private static RegistrationDAO registrationDAO;
+    // Bumped after every committed change to an event, the catalogue endpoints use it as their ETag
+    private static final AtomicLong catalogueVersion = new AtomicLong();
+    private static final List<EventChangeListener> changeListeners = new CopyOnWriteArrayList<>();
 public EventDAO(EntityManagerFactory emf) {
         this.emf = emf;
+        registrationDAO = new RegistrationDAO(emf);
     }
 
     public static EventDAO getInstance(EntityManagerFactory emf) {
@@ -27,180 +53,516 @@ public EventDAO(EntityManagerFactory emf) {
     // As a user, I want to see all the events/workshops that are going to be held.
 
     public List<Event> getAlleEvents() {
-        EntityManager em = emf.createEntityManager();
-        return em.createQuery("SELECT e FROM Event e", Event.class).getResultList();
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            return em.createQuery("SELECT e FROM Event e", Event.class)
+                    .setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(Event.GRAPH_WITH_CATEGORY))
+                    .setHint(HibernateHints.HINT_CACHEABLE, true)
+                    .setHint(HibernateHints.HINT_CACHE_REGION, QUERY_CACHE_REGION)
+                    .getResultList();
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
+
+    // For callers outside a request (no session left open for them): the events are mapped while the
+    // session is still open, so a category proxy coming from the query cache can still be initialized
+    public <T> List<T> getAlleEvents(Function<Event, T> mapper) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            return em.createQuery("SELECT e FROM Event e", Event.class)
+                    .setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(Event.GRAPH_WITH_CATEGORY))
+                    .setHint(HibernateHints.HINT_CACHEABLE, true)
+                    .setHint(HibernateHints.HINT_CACHE_REGION, QUERY_CACHE_REGION)
+                    .getResultStream()
+                    .map(mapper)
+                    .toList();
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
 
+    // The events with these ids that still exist, mapped inside the session like getAlleEvents(mapper)
+    public <T> List<T> getEventsByIds(Collection<Integer> ids, Function<Event, T> mapper) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            return em.createQuery("SELECT e FROM Event e WHERE e.EventId IN :ids ORDER BY e.EventId", Event.class)
+                    .setParameter("ids", ids)
+                    .setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(Event.GRAPH_WITH_CATEGORY))
+                    .getResultStream()
+                    .map(mapper)
+                    .toList();
+        } finally {
+            UnitOfWork.release(em);
+        }
     }
 
     public Event getEventById(int id) {
-        EntityManager em = emf.createEntityManager();
-        return em.find(Event.class, id);
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            return em.find(Event.class, id, withCategory(em));
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
+
+    public Category getCategoryById(int id) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            return em.find(Category.class, id);
+        } finally {
+            UnitOfWork.release(em);
+        }
     }
 
     public List<Event> getEventsByCategory(Integer categoryId) {
         String jpql = "SELECT e FROM Event e WHERE e.category.CategoryID = :categoryId";
-        EntityManager em = emf.createEntityManager();
+        EntityManager em = UnitOfWork.getEntityManager(emf);
         try {
             return em.createQuery(jpql, Event.class)
                     .setParameter("categoryId", categoryId)
+                    .setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(Event.GRAPH_WITH_CATEGORY))
+                    .setHint(HibernateHints.HINT_CACHEABLE, true)
+                    .setHint(HibernateHints.HINT_CACHE_REGION, QUERY_CACHE_REGION)
                     .getResultList();
         } finally {
-            em.close();
+            UnitOfWork.release(em);
         }
     }
 
     public List<Event> getEventByStatus(String status) {
-        EntityManager em = emf.createEntityManager();
+        EntityManager em = UnitOfWork.getEntityManager(emf);
         try {
             String jpql = "SELECT e FROM Event e WHERE e.Status = :status";
             TypedQuery<Event> query = em.createQuery(jpql, Event.class);
             query.setParameter("status", status);
+            query.setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(Event.GRAPH_WITH_CATEGORY));
+            query.setHint(HibernateHints.HINT_CACHEABLE, true);
+            query.setHint(HibernateHints.HINT_CACHE_REGION, QUERY_CACHE_REGION);
             return query.getResultList();
         } finally {
-            em.close();
+            UnitOfWork.release(em);
         }
     }
 
-    public Event create(Event event) {
-        EntityManager em = emf.createEntityManager();
-        em.getTransaction().begin();
-        em.persist(event);
-        em.getTransaction().commit();
-        return event;
+    // Keyset pagination on event_id: pass the last id of the previous page (0 for the first) and limit + 1
+    public List<Event> getEventsPage(EventFilter filter, int afterId, int limit) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            return createEventQuery(em, filter, afterId)
+                    .setMaxResults(limit)
+                    .getResultList();
+        } finally {
+            UnitOfWork.release(em);
+        }
     }
-    public Event read(int id) {
-        EntityManager em = emf.createEntityManager();
-        return em.find(Event.class, id);
+
+    // Hands the events to the consumer one at a time while the rows are read from a server-side cursor,
+    // so the caller can write them out without the whole result ever being in memory
+    public void streamEvents(EventFilter filter, Consumer<Event> consumer) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            scroll(em, createEventQuery(em, filter, 0), consumer);
+        } finally {
+            UnitOfWork.release(em);
+        }
     }
 
+    private TypedQuery<Event> createEventQuery(EntityManager em, EventFilter filter, int afterId) {
+        StringBuilder jpql = new StringBuilder("SELECT e FROM Event e WHERE e.EventId > :afterId");
+        if (filter.getCategoryId() != null) {
+            jpql.append(" AND e.category.CategoryID = :categoryId");
+        }
+        if (filter.getStatus() != null) {
+            jpql.append(" AND e.Status = :status");
+        }
+        if (filter.getLocation() != null) {
+            jpql.append(" AND e.location = :location");
+        }
+        if (filter.getFrom() != null) {
+            jpql.append(" AND e.Date >= :from");
+        }
+        if (filter.getTo() != null) {
+            jpql.append(" AND e.Date < :to");
+        }
+        jpql.append(" ORDER BY e.EventId");
 
-    public Event update(Event event) {
+        TypedQuery<Event> query = em.createQuery(jpql.toString(), Event.class)
+                .setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(Event.GRAPH_WITH_CATEGORY))
+                .setParameter("afterId", afterId);
+        if (filter.getCategoryId() != null) {
+            query.setParameter("categoryId", filter.getCategoryId());
+        }
+        if (filter.getStatus() != null) {
+            query.setParameter("status", filter.getStatus());
+        }
+        if (filter.getLocation() != null) {
+            query.setParameter("location", filter.getLocation());
+        }
+        if (filter.getFrom() != null) {
+            query.setParameter("from", filter.getFrom().atStartOfDay());
+        }
+        if (filter.getTo() != null) {
+            query.setParameter("to", filter.getTo().plusDays(1).atStartOfDay()); // 'to' is inclusive
+        }
+        return query;
+    }
+
+    /*
+    Events starting in [from, to) (to may be null), in start order (date, time, id), optionally in one location.
+    after is the last event of the previous page, null for the first. The row comparisons keep it one range
+    scan of idx_event_start / idx_event_location_start. Pass limit + 1.
+    */
+    public List<Event> getEventsByStart(LocalDateTime from, LocalDateTime to, Location location, EventStart after, int limit) {
+        EventStart lower = new EventStart(from, 0); // ids start at 1, so this includes events starting at 'from'
+        if (after != null && after.compareTo(lower) > 0) {
+            lower = after;
+        }
+        StringBuilder jpql = new StringBuilder("SELECT e FROM Event e WHERE (e.Date, e.Time, e.EventId) > (:afterDate, :afterTime, :afterId)");
+        if (to != null) {
+            jpql.append(" AND (e.Date, e.Time) < (:toDate, :toTime)");
+        }
+        if (location != null) {
+            jpql.append(" AND e.location = :location");
+        }
+        jpql.append(" ORDER BY e.Date, e.Time, e.EventId");
 
-        EntityManager em = emf.createEntityManager();
-        em.getTransaction().begin();
-        em.merge(event);
-        em.getTransaction().commit();
-        return event;
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            TypedQuery<Event> query = em.createQuery(jpql.toString(), Event.class)
+                    .setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(Event.GRAPH_WITH_CATEGORY))
+                    .setParameter("afterDate", lower.start().toLocalDate().atStartOfDay()) // the date column is midnight, the time is its own column
+                    .setParameter("afterTime", lower.start().toLocalTime())
+                    .setParameter("afterId", lower.eventId())
+                    .setMaxResults(limit);
+            if (to != null) {
+                query.setParameter("toDate", to.toLocalDate().atStartOfDay());
+                query.setParameter("toTime", to.toLocalTime());
+            }
+            if (location != null) {
+                query.setParameter("location", location);
+            }
+            return query.getResultList();
+        } finally {
+            UnitOfWork.release(em);
+        }
     }
 
+    private static Map<String, Object> withCategory(EntityManager em) {
+        return Map.of(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(Event.GRAPH_WITH_CATEGORY));
+    }
 
-    public void delete(int id) {
-        EntityManager em = emf.createEntityManager();
-        em.getTransaction().begin();
-        Event event = em.find(Event.class, id);
-        em.remove(event);
-        em.getTransaction().commit();
+    private static <T> void scroll(EntityManager em, TypedQuery<T> typedQuery, Consumer<T> consumer) {
+        // The postgres driver only uses a cursor (instead of reading everything) inside a transaction
+        boolean ownTransaction = !em.getTransaction().isActive();
+        if (ownTransaction) {
+            em.getTransaction().begin();
+        }
+        try (ScrollableResults<T> results = typedQuery.unwrap(Query.class)
+                .setFetchSize(STREAM_FETCH_SIZE)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                T row = results.get();
+                consumer.accept(row);
+                em.detach(row); // keep the persistence context from growing with the result
+            }
+        } finally {
+            if (ownTransaction) {
+                rollbackIfActive(em); // read only, nothing to commit
+            }
+        }
     }
 
-    public void addUserToEvent(User user, Event createdEvent) {
-        EntityManager em = emf.createEntityManager();
-        em.getTransaction().begin();
-        Event event = em.find(Event.class, createdEvent.getEventId());
-        event.addUser(user);
-        em.getTransaction().commit();
+    public Event create(Event event) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            em.persist(event);
+            RegistrationDAO.createSeatsRow(em, event.getEventId());
+            em.getTransaction().commit();
+            catalogueChanged(Set.of(event.getEventId()));
+            return event;
+        } finally {
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
+        }
+    }
+    // Bulk import: all events in one transaction, with batched inserts (Event ids come from the pooled
+    // sequence, so Hibernate doesn't need a round trip per row). If the batch fails, the events are retried
+    // one per transaction so a bad row only costs itself. Returns the error per failed event, by list index.
+    public Map<Integer, String> createAll(List<Event> events) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        Map<Integer, String> errors = new LinkedHashMap<>();
+        // The categories as they came in (plain objects with just the id). A failed attempt leaves the events
+        // holding references from a cleared persistence context, which can't even tell their id any more.
+        List<Category> categories = events.stream()
+                .map(Event::getCategory)
+                .toList();
+        try {
+            try {
+                em.getTransaction().begin();
+                for (int i = 0; i < events.size(); i++) {
+                    persistWithSeats(em, events.get(i), categories.get(i));
+                }
+                em.getTransaction().commit();
+            } catch (RuntimeException e) {
+                rollbackIfActive(em);
+                em.clear();
+                for (int i = 0; i < events.size(); i++) {
+                    Event event = events.get(i);
+                    event.setEventId(0); // the failed persist already gave it an id
+                    try {
+                        em.getTransaction().begin();
+                        persistWithSeats(em, event, categories.get(i));
+                        em.getTransaction().commit();
+                    } catch (RuntimeException rowError) {
+                        rollbackIfActive(em);
+                        em.clear();
+                        event.setCategory(categories.get(i));
+                        errors.put(i, rootCauseMessage(rowError));
+                    }
+                }
+            }
+            if (errors.size() < events.size()) {
+                Set<Integer> imported = new HashSet<>();
+                for (int i = 0; i < events.size(); i++) {
+                    if (!errors.containsKey(i)) {
+                        imported.add(events.get(i).getEventId());
+                    }
+                }
+                catalogueChanged(imported);
+            }
+            em.clear(); // the imported events would otherwise stay in the (request scoped) persistence context
+            return errors;
+        } finally {
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
+        }
     }
 
-    public void removeUserFromEvent(User user, Event createdEvent) {
-        EntityManager em = emf.createEntityManager();
-        em.getTransaction().begin();
-        Event event = em.find(Event.class, createdEvent.getEventId());
-        event.removeUser(user);
-        em.getTransaction().commit();
+    // category is the event's category as it came in; the event gets a reference to it in this persistence context
+    private static void persistWithSeats(EntityManager em, Event event, Category category) {
+        event.setCategory(category != null ? em.getReference(Category.class, category.getCategoryId()) : null);
+        em.persist(event);
+        em.persist(new EventSeats(event.getEventId(), 0)); // the id is known right after persist, no flush needed
     }
 
+    private static String rootCauseMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
 
-    public List<User> getRegistrationsForEventById(int eventId) {
-        EntityManager em = emf.createEntityManager();
+    public Set<Integer> getCategoryIds() {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
         try {
+            return new HashSet<>(em.createQuery("SELECT c.CategoryID FROM Category c", Integer.class).getResultList());
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
 
-            String jpql = "SELECT DISTINCT u FROM User u JOIN FETCH u.roles JOIN FETCH u.events e WHERE e.EventId = :eventId";
-            List<User> users = em.createQuery(jpql, User.class)
-                    .setParameter("eventId", eventId)
-                    .getResultList();
-            return users;
+    /*
+    Full-text search in Postgres, for catalogues too big for the in-memory index (SEARCH_BACKEND=postgres).
+    hbm2ddl doesn't know generated columns, so the tsvector column and its GIN index are added here. The
+    weights rank title over instructor over description, like the in-memory index does.
+    */
+    public void createSearchIndex() {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("ALTER TABLE event ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (" +
+                    "setweight(to_tsvector('danish', coalesce(title, '')), 'A') || " +
+                    "setweight(to_tsvector('danish', coalesce(instructor, '')), 'B') || " +
+                    "setweight(to_tsvector('danish', coalesce(description, '')), 'C')) STORED").executeUpdate();
+            em.createNativeQuery("CREATE INDEX IF NOT EXISTS idx_event_search ON event USING GIN (search_vector)").executeUpdate();
+            em.getTransaction().commit();
         } finally {
-            em.close();
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
         }
     }
 
-    public long getRegistrationsCountById(int id) {
-        EntityManager em = emf.createEntityManager();
+    // tsquery in to_tsquery syntax, e.g. "yoga & begynd:*", built by the caller from plain words only
+    public SearchHits searchEventIds(String tsquery, int limit) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
         try {
-            TypedQuery<Long> query = em.createQuery("SELECT COUNT(u) " +
-                    "FROM User u " +
-                    "JOIN u.events e " +
-                    "WHERE e.id = :id", Long.class);
-            query.setParameter("id", id);
-            Long count = query.getSingleResult();
-            return count;
-        } catch (NoResultException e) {
-            System.out.println(e);
-            return 0; // If there's no such event, returning count as 0
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = em.createNativeQuery("SELECT e.event_id, count(*) OVER () FROM event e, to_tsquery('danish', :query) q " +
+                            "WHERE e.search_vector @@ q ORDER BY ts_rank(e.search_vector, q) DESC, e.event_id LIMIT :limit")
+                    .setParameter("query", tsquery)
+                    .setParameter("limit", limit)
+                    .getResultList();
+            long total = rows.isEmpty() ? 0 : ((Number) rows.get(0)[1]).longValue();
+            return new SearchHits(total, rows.stream().map(row -> ((Number) row[0]).intValue()).toList());
         } finally {
-            em.close();
+            UnitOfWork.release(em);
         }
     }
 
-    public void addUserToEvent(int userId, int eventId) {
-        EntityManager em = emf.createEntityManager();
+    // Events made before the switch from IDENTITY to the sequence have ids the sequence doesn't know about
+    public void alignIdSequence() {
+        IdSequences.align(emf, "event_seq", "event", "event_id");
+    }
+
+    public Event read(int id) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
         try {
-            em.getTransaction().begin();
+            return em.find(Event.class, id, withCategory(em));
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
 
-            User user = em.find(User.class, userId);
-            Event event = em.find(Event.class, eventId);
 
-            if (user != null && event != null) {
-                // Add the user to the event
-                event.getUsers().add(user);
+    public Event update(Event event) {
 
-                // Also update the user's side of the relationship if it's bidirectional
-                user.getEvents().add(event);
-                em.merge(user);
-                em.merge(event);
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            // Seat row before event row, the same order as delete(), so the two can't deadlock
+            RegistrationDAO.lockSeatsRow(em, event.getEventId());
+            Integer oldCapacity = lockStoredCapacity(em, event.getEventId());
+            em.merge(event);
+            int promoted = 0;
+            if (oldCapacity != null && event.getCapacity() > oldCapacity) {
+                // The new seats go to the waitlist first, or a plain register() could take them past it
+                em.flush();
+                promoted = RegistrationDAO.fillFromWaitlist(em, event.getEventId());
+            }
+            if (promoted > 0) {
+                RegistrationDAO.commitCounted(em, event.getEventId(), promoted);
             } else {
-                System.out.println("User or event not found");
+                em.getTransaction().commit();
             }
+            catalogueChanged(Set.of(event.getEventId()));
+            return event;
+        } finally {
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
+        }
+    }
+
+
+    // The capacity as stored, not as the event passed to update() has it: inside a request that event is the
+    // managed instance, already changed. COMMIT keeps Hibernate from flushing the change (and locking the row) first.
+    private static Integer lockStoredCapacity(EntityManager em, int eventId) {
+        List<?> rows = em.createNativeQuery("SELECT capacity FROM event WHERE event_id = ?1 FOR UPDATE")
+                .setParameter(1, eventId)
+                .setFlushMode(FlushModeType.COMMIT)
+                .getResultList();
+        return rows.isEmpty() ? null : ((Number) rows.get(0)).intValue();
+    }
 
+
+    public void delete(int id) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            Event event = em.find(Event.class, id);
+            RegistrationDAO.deleteRegistrations(em, id);
+            em.remove(event);
             em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
-            }
-            throw new RuntimeException("Error adding user to event", e);
+            RegistrationCounters.remove(id);
+            catalogueChanged(Set.of(id));
         } finally {
-            em.close();
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
         }
     }
 
+    public List<User> getRegistrationsForEventById(int eventId) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+
+            // Only the users: UserDTO doesn't need their roles, and fetching u.events here would multiply the rows
+            // and leave each user with a partial events collection
+            String jpql = "SELECT u FROM User u JOIN u.events e WHERE e.EventId = :eventId ORDER BY u.id";
+            List<User> users = em.createQuery(jpql, User.class)
+                    .setParameter("eventId", eventId)
+                    .getResultList();
+            return users;
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
 
+    public List<User> getRegistrationsForEventPage(int eventId, int afterId, int limit) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            String jpql = "SELECT u FROM User u JOIN u.events e WHERE e.EventId = :eventId AND u.id > :afterId ORDER BY u.id";
+            return em.createQuery(jpql, User.class)
+                    .setParameter("eventId", eventId)
+                    .setParameter("afterId", afterId)
+                    .setMaxResults(limit)
+                    .getResultList();
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
 
-    public void removeUserEvent(int userId, int eventId) {
-        EntityManager em = emf.createEntityManager();
+    public void streamRegistrationsForEvent(int eventId, Consumer<User> consumer) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
         try {
-            em.getTransaction().begin();
+            String jpql = "SELECT u FROM User u JOIN u.events e WHERE e.EventId = :eventId ORDER BY u.id";
+            scroll(em, em.createQuery(jpql, User.class).setParameter("eventId", eventId), consumer);
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
 
-            User user = em.find(User.class, userId);
-            Event event = em.find(Event.class, eventId);
+    public long getRegistrationsCountById(int id) {
+        return registrationDAO.getCount(id);
+    }
 
-            if (user != null && event != null) {
+    public Map<Integer, Long> getRegistrationsCounts(Collection<Integer> ids) {
+        return registrationDAO.getCounts(ids);
+    }
 
-                event.getUsers().remove(user);
-                user.getEvents().remove(event);
+    public void startRegistrationReconciliation(long periodSeconds) {
+        registrationDAO.startReconciliation(periodSeconds);
+    }
 
-                em.merge(user);
-                em.merge(event);
-            } else {
-                System.out.println("User or event not found");
-            }
+    public RegistrationResult addUserToEvent(int userId, int eventId) {
+        return registrationDAO.register(userId, eventId);
+    }
 
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
-            }
-            throw new RuntimeException("Error removing user from event", e);
-        } finally {
-            em.close();
+    public RegistrationResult addUserToEventOrWaitlist(int userId, int eventId) {
+        return registrationDAO.registerOrWaitlist(userId, eventId);
+    }
+
+    public int getWaitlistPosition(int userId, int eventId) {
+        return registrationDAO.getWaitlistPosition(userId, eventId);
+    }
+
+    public boolean removeUserEvent(int userId, int eventId) {
+        return registrationDAO.unregister(userId, eventId);
+    }
+
+    public static long getCatalogueVersion() {
+        return catalogueVersion.get();
+    }
+
+    public static void addChangeListener(EventChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    static void catalogueChanged(Set<Integer> eventIds) {
+        long version = catalogueVersion.incrementAndGet();
+        for (EventChangeListener listener : changeListeners) {
+            listener.eventsChanged(version, eventIds);
+        }
+    }
+
+    private static void rollbackIfActive(EntityManager em) {
+        if (em.getTransaction().isActive()) {
+            em.getTransaction().rollback();
         }
     }
 }
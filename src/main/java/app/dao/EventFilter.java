@@ -0,0 +1,26 @@
+package app.dao;
+
+import app.model.Location;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+// Optional filters for EventDAO.getEventsPage. Null means "don't filter on this".
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventFilter {
+    private Integer categoryId;
+    private String status;
+    private Location location;
+    private LocalDate from;
+    private LocalDate to;
+
+    public boolean isEmpty() {
+        return categoryId == null && status == null && location == null && from == null && to == null;
+    }
+}
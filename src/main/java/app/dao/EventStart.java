@@ -0,0 +1,14 @@
+package app.dao;
+
+import java.time.LocalDateTime;
+
+// When an event starts (its date at its time), with the id to order events that start at the same time.
+// The order of the timeline and of the upcoming/between pages.
+public record EventStart(LocalDateTime start, int eventId) implements Comparable<EventStart> {
+
+    @Override
+    public int compareTo(EventStart other) {
+        int byStart = start.compareTo(other.start);
+        return byStart != 0 ? byStart : Integer.compare(eventId, other.eventId);
+    }
+}
@@ -0,0 +1,28 @@
+package app.dao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+// Tables that moved from IDENTITY to a pooled sequence (for JDBC batching) still have rows with ids the
+// sequence never handed out. align() moves the sequence up to the highest id, and never backwards, other
+// instances may hold blocks above it. With the pooled optimizer the next block then starts right after it.
+class IdSequences {
+
+    private IdSequences() {
+    }
+
+    static void align(EntityManagerFactory emf, String sequence, String table, String idColumn) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("SELECT setval('" + sequence + "', GREATEST((SELECT COALESCE(MAX(" + idColumn + "), 0) FROM " + table + "), " +
+                    "(SELECT last_value FROM " + sequence + ")))").getSingleResult();
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            UnitOfWork.release(em);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package app.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+
+In-memory registration count per event, so the count endpoints don't touch the database once an event
+has been looked at. RegistrationDAO loads missing ones from event_seats and applies its own changes
+after they commit. Events that are never asked for are never loaded.
+
+A count read from the database can be older than the counter by the time it arrives: a signup may have
+committed (or be committing) between the read and the set. So every change is announced before its
+commit (beginChange) and applied after it (endChange), which bumps the counter's version, and a value
+read from the database only replaces the counter when no change was applied or in flight since the
+read started (see stamp() and load()). A refused value is simply dropped, the counter already knows better
+or the next reconcile() run brings it back in line.
+
+*/
+public class RegistrationCounters {
+    private static final ConcurrentHashMap<Integer, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    private RegistrationCounters() {
+    }
+
+    // Guarded by its own monitor, only one event's registrations ever contend for it
+    private static final class Counter {
+        private long value;
+        private boolean loaded;
+        private int inFlight; // changes between beginChange and endChange
+        private long version; // changes applied so far
+    }
+
+    // Called before committing a change to the event's seat count
+    static void beginChange(int eventId) {
+        Counter counter = COUNTERS.computeIfAbsent(eventId, id -> new Counter());
+        synchronized (counter) {
+            counter.inFlight++;
+        }
+    }
+
+    // Called after the commit with the change (0 when the commit failed)
+    static void endChange(int eventId, long delta) {
+        Counter counter = COUNTERS.get(eventId);
+        if (counter == null) {
+            return; // the event was deleted meanwhile
+        }
+        synchronized (counter) {
+            counter.inFlight--;
+            counter.value += delta;
+            counter.version++;
+        }
+    }
+
+    // Taken before reading the count from the database, load() needs it
+    static long stamp(int eventId) {
+        Counter counter = COUNTERS.computeIfAbsent(eventId, id -> new Counter());
+        synchronized (counter) {
+            return counter.version;
+        }
+    }
+
+    // Sets the count read from the database unless a change got in since the stamp. Returns whether it did.
+    static boolean load(int eventId, long value, long stamp) {
+        Counter counter = COUNTERS.get(eventId);
+        if (counter == null) {
+            return false;
+        }
+        synchronized (counter) {
+            if (counter.inFlight > 0 || counter.version != stamp) {
+                return false;
+            }
+            counter.value = value;
+            counter.loaded = true;
+            return true;
+        }
+    }
+
+    static void remove(int eventId) {
+        COUNTERS.remove(eventId);
+    }
+
+    // Every event with a counter, loaded or not
+    static List<Integer> getEventIds() {
+        return new ArrayList<>(COUNTERS.keySet());
+    }
+
+    // null when the event's counter is not loaded yet
+    static Long get(int eventId) {
+        Counter counter = COUNTERS.get(eventId);
+        if (counter == null) {
+            return null;
+        }
+        synchronized (counter) {
+            return counter.loaded ? counter.value : null;
+        }
+    }
+
+    public static int size() {
+        return COUNTERS.size();
+    }
+}
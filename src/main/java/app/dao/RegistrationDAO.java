@@ -0,0 +1,433 @@
+package app.dao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.query.NativeQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+Registration engine for user_events. A signup is one conditional UPDATE on the event's event_seats row
+(only succeeds while seats_taken < capacity) plus one INSERT into user_events, in the same transaction.
+The UPDATE row lock serializes concurrent signups for the same event, so it can never be overbooked,
+and neither Event.users nor User.events is loaded or rewritten.
+
+A full event can also queue the user in event_waitlist (registerOrWaitlist). When unregister() frees a seat
+it pops the head of that queue in the same transaction and hands the seat over, so a promotion costs one
+indexed DELETE and one INSERT no matter how long the queue is.
+Raising an event's capacity (EventDAO.update) does the same for each new seat, so the queue never gets skipped.
+
+The counts endpoints are served from RegistrationCounters, which is updated after each commit here and
+brought back in line with event_seats (and event_seats with user_events) by reconcile().
+
+Both register() and unregister() lock the event_seats row before touching user_events, so they always
+take their locks in the same order and cannot deadlock each other.
+
+*/
+public class RegistrationDAO {
+    private static final Logger log = LoggerFactory.getLogger(RegistrationDAO.class);
+    private static final int RECONCILE_BATCH = 1000; // counters compared per query
+    private EntityManagerFactory emf;
+
+    public RegistrationDAO(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public RegistrationResult register(int userId, int eventId) {
+        return register(userId, eventId, false);
+    }
+
+    // Same as register(), but a full event puts the user on its waitlist (WAITLISTED) instead of returning FULL
+    public RegistrationResult registerOrWaitlist(int userId, int eventId) {
+        return register(userId, eventId, true);
+    }
+
+    private RegistrationResult register(int userId, int eventId, boolean waitlistWhenFull) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            if (waitlistWhenFull) {
+                // Hold the seat row until the user is queued, so a cancellation can't free a seat in between
+                // and promote from a queue the user is not on yet
+                lockSeatsRow(em, eventId);
+            }
+
+            int taken = takeSeat(em, eventId);
+            if (taken == 0 && !seatsRowExists(em, eventId)) {
+                // Event created before seats were counted: create its counter from the join table
+                if (seedSeatsRow(em, eventId) == 0 && !seatsRowExists(em, eventId)) {
+                    em.getTransaction().rollback();
+                    return RegistrationResult.NOT_FOUND;
+                }
+                taken = takeSeat(em, eventId);
+            }
+            if (taken == 0) {
+                if (isRegistered(em, userId, eventId)) {
+                    em.getTransaction().rollback();
+                    return RegistrationResult.DUPLICATE;
+                }
+                if (!waitlistWhenFull) {
+                    em.getTransaction().rollback();
+                    return RegistrationResult.FULL;
+                }
+                // Already being on the waitlist is fine, the user keeps their place
+                int queued = executeUpdate(em, "event_waitlist",
+                        "INSERT INTO event_waitlist (event_id, user_id, created_at) SELECT ?2, u.id, now() FROM users u WHERE u.id = ?1 " +
+                                "ON CONFLICT DO NOTHING", userId, eventId);
+                if (queued == 0 && !isWaitlisted(em, userId, eventId)) {
+                    em.getTransaction().rollback();
+                    return RegistrationResult.NOT_FOUND;
+                }
+                em.getTransaction().commit();
+                return RegistrationResult.WAITLISTED;
+            }
+
+            int inserted = executeUpdate(em, "user_events",
+                    "INSERT INTO user_events (user_id, event_id) SELECT u.id, ?2 FROM users u WHERE u.id = ?1 " +
+                            "ON CONFLICT DO NOTHING", userId, eventId);
+            if (inserted == 0) {
+                // Rolling back gives the seat back
+                RegistrationResult result = isRegistered(em, userId, eventId) ? RegistrationResult.DUPLICATE : RegistrationResult.NOT_FOUND;
+                em.getTransaction().rollback();
+                return result;
+            }
+
+            commitCounted(em, eventId, 1);
+            return RegistrationResult.ACCEPTED;
+        } finally {
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
+        }
+    }
+
+    // Returns false if the user was neither registered for the event nor on its waitlist.
+    // A freed seat goes straight to the head of the waitlist, so seats_taken only drops when nobody is waiting.
+    public boolean unregister(int userId, int eventId) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            lockSeatsRow(em, eventId);
+
+            int deleted = executeUpdate(em, "user_events",
+                    "DELETE FROM user_events WHERE user_id = ?1 AND event_id = ?2", userId, eventId);
+            if (deleted == 0) {
+                int leftWaitlist = executeUpdate(em, "event_waitlist",
+                        "DELETE FROM event_waitlist WHERE user_id = ?1 AND event_id = ?2", userId, eventId);
+                if (leftWaitlist == 0) {
+                    em.getTransaction().rollback();
+                    return false;
+                }
+                em.getTransaction().commit();
+                return true;
+            }
+            boolean promoted = promoteFromWaitlist(em, eventId);
+            if (promoted) {
+                em.getTransaction().commit(); // the seat changed hands, the count is the same
+            } else {
+                executeUpdate(em, "event_seats",
+                        "UPDATE event_seats SET seats_taken = seats_taken - 1 WHERE event_id = ?1 AND seats_taken > 0", eventId);
+                commitCounted(em, eventId, -1);
+            }
+            return true;
+        } finally {
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
+        }
+    }
+
+    public long getCount(int eventId) {
+        return getCounts(List.of(eventId)).getOrDefault(eventId, 0L);
+    }
+
+    // Served from RegistrationCounters; the ones that are not loaded yet are read from event_seats in one query.
+    // Unknown event ids are left out of the result.
+    public Map<Integer, Long> getCounts(Collection<Integer> eventIds) {
+        Map<Integer, Long> counts = new LinkedHashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer eventId : eventIds) {
+            Long count = RegistrationCounters.get(eventId);
+            if (count != null) {
+                counts.put(eventId, count);
+            } else {
+                missing.add(eventId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return counts;
+        }
+
+        Map<Integer, Long> stamps = new HashMap<>();
+        for (Integer eventId : missing) {
+            stamps.put(eventId, RegistrationCounters.stamp(eventId));
+        }
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            // Events without a seat row yet (created before seats were counted) fall back to counting the join table
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = em.createNativeQuery(
+                            "SELECT e.event_id, COALESCE(s.seats_taken, (SELECT COUNT(*) FROM user_events ue WHERE ue.event_id = e.event_id)) " +
+                                    "FROM event e LEFT JOIN event_seats s ON s.event_id = e.event_id WHERE e.event_id IN (:ids)")
+                    .setParameter("ids", missing)
+                    .getResultList();
+            for (Object[] row : rows) {
+                int eventId = ((Number) row[0]).intValue();
+                long count = ((Number) row[1]).longValue();
+                RegistrationCounters.load(eventId, count, stamps.get(eventId));
+                counts.put(eventId, count);
+            }
+            for (Integer eventId : missing) {
+                if (!counts.containsKey(eventId)) {
+                    RegistrationCounters.remove(eventId); // no such event, don't keep a counter for it
+                }
+            }
+            return counts;
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
+
+    /*
+    Repairs event_seats rows that no longer match user_events and creates the missing ones. Each drifted
+    event is fixed in its own transaction under the seat row lock, so it can't race a signup for that event.
+    Then the counters that exist are compared with event_seats (another instance may have changed them) and
+    corrected where no change of ours got in meanwhile, see RegistrationCounters. Events nobody asked for
+    or signed up to get no counter. Returns the number of events repaired.
+    */
+    public int reconcile() {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            executeUpdate(em, "event_seats",
+                    "INSERT INTO event_seats (event_id, seats_taken) " +
+                            "SELECT e.event_id, (SELECT COUNT(*) FROM user_events ue WHERE ue.event_id = e.event_id) FROM event e " +
+                            "WHERE NOT EXISTS (SELECT 1 FROM event_seats s WHERE s.event_id = e.event_id) ON CONFLICT DO NOTHING");
+            em.getTransaction().commit();
+
+            @SuppressWarnings("unchecked")
+            List<Number> drifted = em.createNativeQuery(
+                            "SELECT s.event_id FROM event_seats s LEFT JOIN user_events ue ON ue.event_id = s.event_id " +
+                                    "GROUP BY s.event_id, s.seats_taken HAVING s.seats_taken <> COUNT(ue.user_id)")
+                    .getResultList();
+            for (Number eventId : drifted) {
+                em.getTransaction().begin();
+                lockSeatsRow(em, eventId.intValue());
+                executeUpdate(em, "event_seats",
+                        "UPDATE event_seats SET seats_taken = (SELECT COUNT(*) FROM user_events ue WHERE ue.event_id = ?1) WHERE event_id = ?1",
+                        eventId.intValue());
+                em.getTransaction().commit();
+            }
+
+            List<Integer> counted = RegistrationCounters.getEventIds();
+            for (int from = 0; from < counted.size(); from += RECONCILE_BATCH) {
+                refreshCounters(em, counted.subList(from, Math.min(from + RECONCILE_BATCH, counted.size())));
+            }
+            return drifted.size();
+        } finally {
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
+        }
+    }
+
+    private static void refreshCounters(EntityManager em, List<Integer> eventIds) {
+        Map<Integer, Long> stamps = new HashMap<>();
+        for (Integer eventId : eventIds) {
+            stamps.put(eventId, RegistrationCounters.stamp(eventId));
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> seats = em.createNativeQuery("SELECT event_id, seats_taken FROM event_seats WHERE event_id IN (:ids)")
+                .setParameter("ids", eventIds)
+                .getResultList();
+        Set<Integer> found = new HashSet<>();
+        for (Object[] row : seats) {
+            int eventId = ((Number) row[0]).intValue();
+            found.add(eventId);
+            Long current = RegistrationCounters.get(eventId);
+            long value = ((Number) row[1]).longValue();
+            if (current == null || current != value) {
+                RegistrationCounters.load(eventId, value, stamps.get(eventId));
+            }
+        }
+        for (Integer eventId : eventIds) {
+            if (!found.contains(eventId)) {
+                RegistrationCounters.remove(eventId); // the event is gone
+            }
+        }
+    }
+
+    // Runs reconcile() right away (which also warms the counters) and then every periodSeconds
+    public void startReconciliation(long periodSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "registration-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int repaired = reconcile();
+                if (repaired > 0) {
+                    log.info("Registration counts repaired for {} events", repaired);
+                }
+            } catch (Exception e) {
+                // Keep the schedule alive, the next run tries again
+                log.warn("Registration reconciliation failed", e);
+            }
+        }, 0, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    // 1-based place in the event's waitlist, 0 if the user is not on it
+    public int getWaitlistPosition(int userId, int eventId) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            Number position = (Number) em.createNativeQuery(
+                            "SELECT COUNT(*) FROM event_waitlist w WHERE w.event_id = ?1 " +
+                                    "AND w.id <= (SELECT o.id FROM event_waitlist o WHERE o.event_id = ?1 AND o.user_id = ?2)")
+                    .setParameter(1, eventId)
+                    .setParameter(2, userId)
+                    .getSingleResult();
+            return position.intValue();
+        } finally {
+            UnitOfWork.release(em);
+        }
+    }
+
+    // Commits a change of delta to the event's seat count and applies it to its counter, see RegistrationCounters
+    static void commitCounted(EntityManager em, int eventId, long delta) {
+        RegistrationCounters.beginChange(eventId);
+        boolean committed = false;
+        try {
+            em.getTransaction().commit();
+            committed = true;
+        } finally {
+            RegistrationCounters.endChange(eventId, committed ? delta : 0);
+        }
+    }
+
+    // Called in the transaction that creates or deletes the event
+    static void createSeatsRow(EntityManager em, int eventId) {
+        executeUpdate(em, "event_seats",
+                "INSERT INTO event_seats (event_id, seats_taken) VALUES (?1, 0) ON CONFLICT DO NOTHING", eventId);
+    }
+
+    static void deleteRegistrations(EntityManager em, int eventId) {
+        executeUpdate(em, "event_waitlist", "DELETE FROM event_waitlist WHERE event_id = ?1", eventId);
+        executeUpdate(em, "user_events", "DELETE FROM user_events WHERE event_id = ?1", eventId);
+        executeUpdate(em, "event_seats", "DELETE FROM event_seats WHERE event_id = ?1", eventId);
+    }
+
+    private static int takeSeat(EntityManager em, int eventId) {
+        return executeUpdate(em, "event_seats",
+                "UPDATE event_seats s SET seats_taken = s.seats_taken + 1 FROM event e " +
+                        "WHERE s.event_id = ?1 AND e.event_id = s.event_id AND s.seats_taken < e.capacity", eventId);
+    }
+
+    // Pops the head of the waitlist (one index lookup on (event_id, id)) and gives it the caller's freed seat.
+    // The caller holds the seat row lock; SKIP LOCKED keeps us off a row that is being removed by its user right now.
+    // Returns false if nobody could be promoted.
+    private static boolean promoteFromWaitlist(EntityManager em, int eventId) {
+        while (true) {
+            List<?> head = em.createNativeQuery(
+                            "DELETE FROM event_waitlist WHERE id = (SELECT w.id FROM event_waitlist w WHERE w.event_id = ?1 " +
+                                    "ORDER BY w.id LIMIT 1 FOR UPDATE SKIP LOCKED) RETURNING user_id")
+                    .unwrap(NativeQuery.class)
+                    .addSynchronizedQuerySpace("event_waitlist")
+                    .setParameter(1, eventId)
+                    .getResultList();
+            if (head.isEmpty()) {
+                return false;
+            }
+            int userId = ((Number) head.get(0)).intValue();
+            int inserted = executeUpdate(em, "user_events",
+                    "INSERT INTO user_events (user_id, event_id) SELECT u.id, ?2 FROM users u WHERE u.id = ?1 " +
+                            "ON CONFLICT DO NOTHING", userId, eventId);
+            if (inserted == 1) {
+                return true;
+            }
+            // The user was deleted or is already registered, the entry is gone now so try the next one
+        }
+    }
+
+    // Called in the transaction that raises the event's capacity, with the seat row locked: hands the new seats
+    // to the head of the waitlist, one by one, until the event is full or nobody is waiting. Returns how many.
+    static int fillFromWaitlist(EntityManager em, int eventId) {
+        int promoted = 0;
+        while (takeSeat(em, eventId) == 1) {
+            if (!promoteFromWaitlist(em, eventId)) {
+                executeUpdate(em, "event_seats",
+                        "UPDATE event_seats SET seats_taken = seats_taken - 1 WHERE event_id = ?1", eventId);
+                break;
+            }
+            promoted++;
+        }
+        return promoted;
+    }
+
+    private static int seedSeatsRow(EntityManager em, int eventId) {
+        return executeUpdate(em, "event_seats",
+                "INSERT INTO event_seats (event_id, seats_taken) " +
+                        "SELECT e.event_id, (SELECT COUNT(*) FROM user_events ue WHERE ue.event_id = e.event_id) " +
+                        "FROM event e WHERE e.event_id = ?1 ON CONFLICT DO NOTHING", eventId);
+    }
+
+    private static boolean seatsRowExists(EntityManager em, int eventId) {
+        return !em.createNativeQuery("SELECT 1 FROM event_seats WHERE event_id = ?1")
+                .setParameter(1, eventId)
+                .getResultList()
+                .isEmpty();
+    }
+
+    // Only event_seats is synchronized, so a changed Event in the persistence context isn't flushed (and its row
+    // locked) before this lock is taken
+    static void lockSeatsRow(EntityManager em, int eventId) {
+        em.createNativeQuery("SELECT 1 FROM event_seats WHERE event_id = ?1 FOR UPDATE")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace("event_seats")
+                .setParameter(1, eventId)
+                .getResultList();
+    }
+
+    private static boolean isRegistered(EntityManager em, int userId, int eventId) {
+        return !em.createNativeQuery("SELECT 1 FROM user_events WHERE user_id = ?1 AND event_id = ?2")
+                .setParameter(1, userId)
+                .setParameter(2, eventId)
+                .getResultList()
+                .isEmpty();
+    }
+
+    private static boolean isWaitlisted(EntityManager em, int userId, int eventId) {
+        return !em.createNativeQuery("SELECT 1 FROM event_waitlist WHERE user_id = ?1 AND event_id = ?2")
+                .setParameter(1, userId)
+                .setParameter(2, eventId)
+                .getResultList()
+                .isEmpty();
+    }
+
+    // The query space tells Hibernate which table changed, otherwise a native update evicts every cache region
+    private static int executeUpdate(EntityManager em, String querySpace, String sql, Object... params) {
+        NativeQuery<?> query = em.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(querySpace);
+        for (int i = 0; i < params.length; i++) {
+            query.setParameter(i + 1, params[i]);
+        }
+        return query.executeUpdate();
+    }
+
+    private static void rollbackIfActive(EntityManager em) {
+        if (em.getTransaction().isActive()) {
+            em.getTransaction().rollback();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package app.dao;
+
+public enum RegistrationResult {
+    ACCEPTED,
+    DUPLICATE,
+    FULL,
+    WAITLISTED,
+    NOT_FOUND
+}
@@ -0,0 +1,7 @@
+package app.dao;
+
+import java.util.List;
+
+// One page of full-text matches: the event ids best first, and how many events matched in all
+public record SearchHits(long total, List<Integer> eventIds) {
+}
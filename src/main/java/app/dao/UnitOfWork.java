@@ -0,0 +1,148 @@
+package app.dao;
+
+import app.config.LimitedConnectionProvider;
+import app.dto.UnitOfWorkStatsDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+
+One EntityManager per request. ApplicationConfig.setupUnitOfWork() calls begin() in a before handler
+and end() in an after handler. The DAOs ask for their EntityManager through getEntityManager() and hand
+it back with release(); inside a request that is the shared one (closed by end()), outside a request
+(startup code, scripts) they get their own which release() closes.
+
+An open EntityManager doesn't hold a database connection: Hibernate only has one while a statement or
+transaction runs. The limit on concurrent database work is on those connections, see
+LimitedConnectionProvider.
+
+*/
+public class UnitOfWork {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+    private static final long LONG_HELD_THRESHOLD_MS = getEnvLong("UOW_LONG_HELD_MS", 2000);
+
+    private static final LongAdder scopesOpened = new LongAdder();
+    private static final LongAdder scopesClosed = new LongAdder();
+    private static final LongAdder entityManagersOpened = new LongAdder();
+    private static final LongAdder committed = new LongAdder();
+    private static final LongAdder rolledBack = new LongAdder();
+    private static final LongAdder longHeld = new LongAdder();
+    private static final LongAdder leakedScopes = new LongAdder();
+    private static final LongAdder unscopedOpened = new LongAdder();
+    private static final LongAdder unscopedClosed = new LongAdder();
+    private static final AtomicLong maxHeldMs = new AtomicLong();
+
+    private final EntityManagerFactory emf;
+    private EntityManager em; // opened lazily, requests that never touch the database should not pay for it
+    private long openedAt;
+
+    private UnitOfWork(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public static void begin(EntityManagerFactory emf) {
+        if (CURRENT.get() != null) {
+            // The after handler never ran for the previous request on this thread
+            leakedScopes.increment();
+            end(false);
+        }
+        CURRENT.set(new UnitOfWork(emf));
+        scopesOpened.increment();
+    }
+
+    public static EntityManager getEntityManager(EntityManagerFactory emf) {
+        UnitOfWork unitOfWork = CURRENT.get();
+        if (unitOfWork == null || unitOfWork.emf != emf) {
+            EntityManager em = emf.createEntityManager();
+            unscopedOpened.increment();
+            return em;
+        }
+        if (unitOfWork.em == null) {
+            unitOfWork.em = emf.createEntityManager();
+            unitOfWork.openedAt = System.nanoTime();
+            entityManagersOpened.increment();
+        }
+        return unitOfWork.em;
+    }
+
+    public static void release(EntityManager em) {
+        UnitOfWork unitOfWork = CURRENT.get();
+        if (unitOfWork != null && unitOfWork.em == em) {
+            return; // closed by end() when the request is done
+        }
+        try {
+            if (em.isOpen()) {
+                em.close();
+            }
+        } finally {
+            unscopedClosed.increment();
+        }
+    }
+
+    public static void end(boolean success) {
+        UnitOfWork unitOfWork = CURRENT.get();
+        CURRENT.remove();
+        if (unitOfWork == null) {
+            return;
+        }
+        scopesClosed.increment();
+        EntityManager em = unitOfWork.em;
+        if (em == null) {
+            return;
+        }
+        try {
+            // The DAOs commit their own work, so this only sees a transaction that was left open
+            EntityTransaction transaction = em.getTransaction();
+            if (transaction.isActive()) {
+                if (success && !transaction.getRollbackOnly()) {
+                    transaction.commit();
+                    committed.increment();
+                } else {
+                    transaction.rollback();
+                    rolledBack.increment();
+                }
+            }
+        } catch (RuntimeException e) {
+            rolledBack.increment();
+            throw e;
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+            long heldMs = (System.nanoTime() - unitOfWork.openedAt) / 1_000_000;
+            maxHeldMs.accumulateAndGet(heldMs, Math::max);
+            if (heldMs > LONG_HELD_THRESHOLD_MS) {
+                longHeld.increment();
+            }
+        }
+    }
+
+    public static UnitOfWorkStatsDTO getStats() {
+        long unscopedOpen = unscopedOpened.sum() - unscopedClosed.sum();
+        return new UnitOfWorkStatsDTO(
+                scopesOpened.sum(),
+                scopesOpened.sum() - scopesClosed.sum(),
+                entityManagersOpened.sum(),
+                committed.sum(),
+                rolledBack.sum(),
+                longHeld.sum(),
+                LONG_HELD_THRESHOLD_MS,
+                maxHeldMs.get(),
+                leakedScopes.sum(),
+                unscopedOpened.sum(),
+                Math.max(unscopedOpen, 0),
+                LimitedConnectionProvider.getMaxConcurrency(),
+                LimitedConnectionProvider.getAvailablePermits(),
+                LimitedConnectionProvider.getWaitingForPermit(),
+                LimitedConnectionProvider.getPermitTimeouts());
+    }
+
+    private static long getEnvLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
@@ -9,10 +9,17 @@ import app.model.User;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.NoResultException;
-import org.mindrot.jbcrypt.BCrypt;
+import app.security.PasswordHasher;
+import org.hibernate.jpa.SpecHints;
 
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class UserDAO implements ISecurityDAO {
     private EntityManagerFactory emf;
@@ -23,10 +30,10 @@ public class UserDAO implements ISecurityDAO {
 
     @Override
     public User createUser(String username, String password, String email, Integer phoneNumber) {
-        EntityManager em = emf.createEntityManager();
+        User user = new User(username, password, email, phoneNumber); // hashes the password, keep that out of the transaction
+        EntityManager em = UnitOfWork.getEntityManager(emf);
         try {
             em.getTransaction().begin();
-            User user = new User(username, password, email, phoneNumber);
 
             // Ensure the 'user' role exists and is retrieved or created
             Role userRole = em.createQuery("SELECT r FROM Role r WHERE r.name = :name", Role.class)
@@ -45,10 +52,8 @@ public class UserDAO implements ISecurityDAO {
 
             return user;
         } finally {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
-            }
-            em.close();
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
         }
     }
 
@@ -60,85 +65,153 @@ public class UserDAO implements ISecurityDAO {
 //    }
         @Override
         public User UpdateUser (String name, String password){
-            EntityManager em = emf.createEntityManager();
-            em.getTransaction().begin();
             User user = new User(name, password);
-            Role userRole = em.find(Role.class, "user");
-            if (userRole == null) {
-                userRole = new Role("user");
-                em.persist(userRole);
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                em.getTransaction().begin();
+                Role userRole = em.find(Role.class, "user");
+                if (userRole == null) {
+                    userRole = new Role("user");
+                    em.persist(userRole);
+                }
+                user.addRole(userRole);
+                em.merge(user);
+                em.getTransaction().commit();
+                return user;
+            } finally {
+                rollbackIfActive(em);
+                UnitOfWork.release(em);
             }
-            user.addRole(userRole);
-            em.merge(user);
-            em.getTransaction().commit();
-            em.close();
-            return user;
         }
 
 
         @Override
         public User UpdatePassword (User user, String newPassword){
             // Update the user's password and return the updated user
-            String salt = BCrypt.gensalt();
-            user.setPassword(BCrypt.hashpw(newPassword, salt));
-            EntityManager em = emf.createEntityManager();
-            em.getTransaction().begin();
-            em.merge(user);
-            em.getTransaction().commit();
-            em.close();
-            return user;
+            user.setPassword(PasswordHasher.getInstance().hash(newPassword));
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                em.getTransaction().begin();
+                em.merge(user);
+                em.getTransaction().commit();
+                return user;
+            } finally {
+                rollbackIfActive(em);
+                UnitOfWork.release(em);
+            }
         }
         @Override
         public User update (User user){
 
-            EntityManager em = emf.createEntityManager();
-            em.getTransaction().begin();
-            em.merge(user);
-            em.getTransaction().commit();
-            return user;
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                em.getTransaction().begin();
+                em.merge(user);
+                em.getTransaction().commit();
+                return user;
+            } finally {
+                rollbackIfActive(em);
+                UnitOfWork.release(em);
+            }
         }
 
 
         @Override
         public List<User> getAlleUser () {
-            EntityManager em = emf.createEntityManager();
-            return em.createQuery("SELECT u FROM User u", User.class).getResultList();
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                return em.createQuery("SELECT u FROM User u", User.class).getResultList();
+            } finally {
+                UnitOfWork.release(em);
+            }
+        }
+
 
+        // Keyset pagination on id: pass the last id of the previous page (0 for the first) and limit + 1
+        public List<User> getUsersPage(int afterId, int limit) {
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                return em.createQuery("SELECT u FROM User u WHERE u.id > :afterId ORDER BY u.id", User.class)
+                        .setParameter("afterId", afterId)
+                        .setMaxResults(limit)
+                        .getResultList();
+            } finally {
+                UnitOfWork.release(em);
+            }
         }
 
 
         @Override
         public User getUserById ( int id){
-            EntityManager em = emf.createEntityManager();
-            return em.find(User.class, id);
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                return em.find(User.class, id);
+            } finally {
+                UnitOfWork.release(em);
+            }
         }
 
 
+    // The user is read and the EntityManager let go before BCrypt runs, the password check doesn't need the
+    // database. An outdated hash is replaced afterwards in a short transaction of its own.
     public User verifyUser(String name, String password) throws EntityNotFoundException {
-        EntityManager em = emf.createEntityManager();
+        User user;
+        EntityManager em = UnitOfWork.getEntityManager(emf);
         try {
             // Using JPQL to query by username
-            User user = em.createQuery("SELECT u FROM User u WHERE u.name = :name", User.class)
+            user = em.createQuery("SELECT u FROM User u WHERE u.name = :name", User.class)
                     .setParameter("name", name)
+                    .setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, em.getEntityGraph(User.GRAPH_WITH_ROLES)) // the token needs them
                     .getSingleResult();
+            em.detach(user); // the request's EntityManager shouldn't flush the rehash below a second time
+        } catch (NoResultException e) {
+            throw new EntityNotFoundException("No user found with that name: " + name);
+        } finally {
+            UnitOfWork.release(em);
+        }
 
-
-            if (!user.verifyUser(password)) {
-                throw new EntityNotFoundException("Wrong password");
+        if (!user.verifyUser(password)) {
+            throw new EntityNotFoundException("Wrong password");
+        }
+        PasswordHasher hasher = PasswordHasher.getInstance();
+        if (hasher.needsRehash(user.getPassword())) {
+            // Stored with an older, cheaper cost: we have the plain password right now, so upgrade it
+            String rehashed = hasher.hash(password);
+            if (replacePassword(user.getId(), user.getPassword(), rehashed)) {
+                user.setPassword(rehashed);
+                hasher.countRehash();
             }
-            return user;
-        } catch (NoResultException e) {
-             throw new EntityNotFoundException("No user found with that name: " + name);
+        }
+        return user;
+    }
+
+    // Only if the stored hash is still the one we verified, a password changed meanwhile wins
+    private boolean replacePassword(int userId, String oldHash, String newHash) {
+        EntityManager em = UnitOfWork.getEntityManager(emf);
+        try {
+            em.getTransaction().begin();
+            int updated = em.createQuery("UPDATE User u SET u.password = :newHash WHERE u.id = :id AND u.password = :oldHash")
+                    .setParameter("newHash", newHash)
+                    .setParameter("id", userId)
+                    .setParameter("oldHash", oldHash)
+                    .executeUpdate();
+            em.getTransaction().commit();
+            return updated == 1;
         } finally {
-            em.close();
+            rollbackIfActive(em);
+            UnitOfWork.release(em);
         }
     }
 
     @Override
         public User verifyUserForReset (String email, String password) throws EntityNotFoundException {
-            EntityManager em = emf.createEntityManager();
-            User user = em.find(User.class, email);
-            em.close();
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            User user;
+            try {
+                user = em.find(User.class, email);
+            } finally {
+                UnitOfWork.release(em);
+            }
             if (user == null)
                 throw new EntityNotFoundException("No user found with email: " + email);
             if (!user.verifyUser(password))
@@ -170,32 +243,36 @@ public class UserDAO implements ISecurityDAO {
 
         @Override
         public Role createRole (String role){
-            EntityManager em = emf.createEntityManager();
-            Role existingRole = em.find(Role.class, role);
-            if (existingRole != null) {
-                return existingRole;
-            }
-            // If the role doesn't exist, create and persist a new Role object
-            Role newRole = new Role(role);
-
+            EntityManager em = UnitOfWork.getEntityManager(emf);
             try {
-                em.getTransaction().begin();
-                em.persist(newRole);
-                em.getTransaction().commit();
-            } catch (Exception e) {
-                em.getTransaction().rollback(); // Rollback in case of an exception
-                // Handle or rethrow the exception as appropriate for your application
-                throw new RuntimeException("Failed to create role due to: " + e.getMessage(), e);
-            }
+                Role existingRole = em.find(Role.class, role);
+                if (existingRole != null) {
+                    return existingRole;
+                }
+                // If the role doesn't exist, create and persist a new Role object
+                Role newRole = new Role(role);
+
+                try {
+                    em.getTransaction().begin();
+                    em.persist(newRole);
+                    em.getTransaction().commit();
+                } catch (Exception e) {
+                    em.getTransaction().rollback(); // Rollback in case of an exception
+                    // Handle or rethrow the exception as appropriate for your application
+                    throw new RuntimeException("Failed to create role due to: " + e.getMessage(), e);
+                }
 
-            return newRole;
+                return newRole;
+            } finally {
+                UnitOfWork.release(em);
+            }
         }
 
 
         @Override
         public User addRoleToUser (String name, String roleName){
 
-            EntityManager em = emf.createEntityManager();
+            EntityManager em = UnitOfWork.getEntityManager(emf);
 
             User user;
             try {
@@ -213,6 +290,8 @@ public class UserDAO implements ISecurityDAO {
                     em.getTransaction().rollback();
                 }
                 throw new RuntimeException("Failed to add role to user due to: " + e.getMessage(), e);
+            } finally {
+                UnitOfWork.release(em);
             }
 
             return user;
@@ -221,12 +300,107 @@ public class UserDAO implements ISecurityDAO {
 
         @Override
         public void deleteUser ( int id){
-            EntityManager em = emf.createEntityManager();
-            em.getTransaction().begin();
-            User user = em.find(User.class, id);
-            em.remove(user);
-            em.getTransaction().commit();
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                em.getTransaction().begin();
+                User user = em.find(User.class, id);
+                em.remove(user);
+                em.getTransaction().commit();
+            } finally {
+                rollbackIfActive(em);
+                UnitOfWork.release(em);
+            }
         }
 
+        // Bulk provisioning: the users come with their password already hashed and their roles set (any Role
+        // instance with the right name). One transaction with batched inserts for users and user_roles; if it
+        // fails, one transaction per user so a bad row only costs itself. Returns the error per failed user, by index.
+        public Map<Integer, String> createAll (List<User> users){
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            Map<Integer, String> errors = new LinkedHashMap<>();
+            try {
+                try {
+                    em.getTransaction().begin();
+                    for (User user : users) {
+                        persistWithRoleReferences(em, user);
+                    }
+                    em.getTransaction().commit();
+                } catch (RuntimeException e) {
+                    rollbackIfActive(em);
+                    em.clear();
+                    for (int i = 0; i < users.size(); i++) {
+                        User user = users.get(i);
+                        user.setId(0); // the failed persist already gave it an id
+                        try {
+                            em.getTransaction().begin();
+                            persistWithRoleReferences(em, user);
+                            em.getTransaction().commit();
+                        } catch (RuntimeException rowError) {
+                            rollbackIfActive(em);
+                            em.clear();
+                            errors.put(i, rootCauseMessage(rowError));
+                        }
+                    }
+                }
+                em.clear(); // keep the request scoped persistence context from filling up with the cohort
+                return errors;
+            } finally {
+                rollbackIfActive(em);
+                UnitOfWork.release(em);
+            }
+        }
 
+        private static void persistWithRoleReferences (EntityManager em, User user){
+            // References instead of the detached roles: no select per role, only the join rows are written
+            Set<Role> roles = new HashSet<>();
+            for (Role role : user.getRoles()) {
+                roles.add(em.getReference(Role.class, role.getName()));
+            }
+            user.setRoles(roles);
+            em.persist(user);
+        }
+
+        private static String rootCauseMessage (Throwable e){
+            Throwable cause = e;
+            while (cause.getCause() != null && cause.getCause() != cause) {
+                cause = cause.getCause();
+            }
+            return cause.getMessage();
+        }
+
+        // All roles by name, it's a handful of rows; bulk provisioning resolves them once instead of per user
+        public Map<String, Role> getRoles () {
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                Map<String, Role> roles = new HashMap<>();
+                for (Role role : em.createQuery("SELECT r FROM Role r", Role.class).getResultList()) {
+                    roles.put(role.getName(), role);
+                }
+                return roles;
+            } finally {
+                UnitOfWork.release(em);
+            }
+        }
+
+        public Set<String> getExistingNames (Collection<String> names){
+            EntityManager em = UnitOfWork.getEntityManager(emf);
+            try {
+                return new HashSet<>(em.createQuery("SELECT u.name FROM User u WHERE u.name IN :names", String.class)
+                        .setParameter("names", names)
+                        .getResultList());
+            } finally {
+                UnitOfWork.release(em);
+            }
+        }
+
+        // Users made before the switch from IDENTITY to the sequence have ids the sequence doesn't know about
+        public void alignIdSequence () {
+            IdSequences.align(emf, "users_seq", "users", "id");
+        }
+
+        private static void rollbackIfActive(EntityManager em) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+        }
     }
@@ -0,0 +1,23 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AutocompleteStatsDTO {
+    private int completions;
+    private int keys; // one per word of each completion
+    private long estimatedBytes;
+    private long maxBytes;
+    private int dropped; // completions left out to stay within maxBytes
+    private long rebuilds;
+    private long failedRebuilds;
+    private long lastRebuildMs;
+    private long queries;
+}
@@ -0,0 +1,23 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogueSnapshotStatsDTO {
+    private long version; // -1 before the first build
+    private long catalogueVersion; // EventDAO's, the snapshot is only served while the two are equal
+    private int events;
+    private int jsonBytes;
+    private int gzipBytes;
+    private long rebuilds;
+    private long failedRebuilds;
+    private long lastRebuildMs;
+    private long served;
+}
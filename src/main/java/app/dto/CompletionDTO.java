@@ -0,0 +1,17 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompletionDTO {
+    private String text;
+    private String type; // TITLE, INSTRUCTOR or CATEGORY
+    private long weight; // registrations for upcoming events (+1 per event), what the list is sorted by
+}
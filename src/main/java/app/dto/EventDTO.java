@@ -73,7 +73,9 @@ private int EventId;
         this.location = event.getLocation();
         Instructor = event.getInstructor();
         Price = event.getPrice();
-        this.category = event.getCategory();
+        // A copy, the entity's category can be a lazy proxy which Jackson can't serialize once the session is gone
+        Category category = event.getCategory();
+        this.category = category != null ? new Category(category.getCategoryId(), category.getCategoryName()) : null;
         //Image = Arrays.toString(event.getImage());
         Status = event.getStatus();
     }
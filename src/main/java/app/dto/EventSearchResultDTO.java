@@ -0,0 +1,20 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventSearchResultDTO {
+    private String query;
+    private String backend; // memory or postgres
+    private long total; // all matches, events holds the best 'limit' of them
+    private List<EventDTO> events;
+}
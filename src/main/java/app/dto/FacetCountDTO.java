@@ -0,0 +1,18 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetCountDTO {
+    private String value; // what to send back as the filter parameter
+    private String label;
+    private int count; // events that would match with this value picked, the other dimensions' filters kept
+    private boolean selected;
+}
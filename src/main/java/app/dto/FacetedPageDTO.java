@@ -0,0 +1,23 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+// A PageDTO with the total and the facet counts for the same filters
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetedPageDTO<T> {
+    private List<T> items;
+    private String next; // opaque cursor for the next page, null on the last page
+    private int limit;
+    private int total;
+    private Map<String, List<FacetCountDTO>> facets; // category, location, status, month
+}
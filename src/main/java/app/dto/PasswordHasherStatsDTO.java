@@ -0,0 +1,24 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PasswordHasherStatsDTO {
+    private int cost;
+    private int threads;
+    private int activeThreads;
+    private int queued;
+    private int queueCapacity;
+    private long hashed;
+    private long verified;
+    private long rehashed; // outdated hashes upgraded on login
+    private long rejected; // 503, queue was full
+    private long timedOut; // 503, waited too long for a worker
+}
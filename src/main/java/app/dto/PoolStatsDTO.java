@@ -0,0 +1,22 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PoolStatsDTO {
+    private String poolName;
+    private int activeConnections;
+    private int idleConnections;
+    private int totalConnections;
+    private int threadsAwaitingConnection; // > 0 means requests are queueing for a connection
+    private int minimumIdle;
+    private int maximumPoolSize;
+    private long acquireTimeoutMs;
+}
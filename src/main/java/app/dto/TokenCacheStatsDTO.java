@@ -0,0 +1,23 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenCacheStatsDTO {
+    private int size;
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long rejected; // tokens that failed verification
+    private long evicted;
+    private long avgVerifyMicros; // full parse + HMAC, i.e. cache misses only
+    private long maxVerifyMicros;
+}
@@ -0,0 +1,29 @@
+package app.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UnitOfWorkStatsDTO {
+    private long requestScopes;
+    private long openRequestScopes;
+    private long entityManagersOpened;
+    private long committedAtEnd;
+    private long rolledBackAtEnd;
+    private long longHeld;
+    private long longHeldThresholdMs;
+    private long maxHeldMs;
+    private long leakedScopes; // scopes whose after handler never ran
+    private long unscopedEntityManagers;
+    private long unscopedStillOpen; // opened outside a request and never released
+    private int maxConcurrency;
+    private int availablePermits;
+    private int waitingForPermit;
+    private long permitTimeouts; // requests answered with 503
+}
@@ -0,0 +1,268 @@
+package app.metrics;
+
+import app.catalogue.CatalogueSnapshot;
+import app.config.HibernateConfig;
+import app.dao.RegistrationCounters;
+import app.dao.UnitOfWork;
+import app.dto.CatalogueSnapshotStatsDTO;
+import app.dto.PasswordHasherStatsDTO;
+import app.dto.PoolStatsDTO;
+import app.dto.TokenCacheStatsDTO;
+import app.dto.UnitOfWorkStatsDTO;
+import app.security.PasswordHasher;
+import app.security.TokenVerifier;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+
+Request metrics for every route, plus a Prometheus text rendering of everything else we already count
+(connection pool, request scopes, token cache, password hashing, Hibernate statistics), served on /api/admin/metrics.
+
+Recording is allocation-free once a route/method/status combination has been seen: the route is Javalin's
+registered path (so ids in the url don't create new series), the method and status pick a slot in an array,
+and the histogram itself is a few atomic adds.
+
+*/
+public class MetricsRegistry {
+    private static final int STATUS_SLOTS = 500; // 100-599
+    private static final HandlerType[] METHODS = HandlerType.values();
+    private static final double[] BUCKETS_SECONDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static MetricsRegistry instance;
+
+    private final ConcurrentHashMap<String, AtomicReferenceArray<LatencyHistogram>> routes = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    // Route -> SQL statements per request (QueryCounter) by method ordinal, the histogram is reused for plain counts
+    private final ConcurrentHashMap<String, AtomicReferenceArray<LatencyHistogram>> statements = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    public void requestStarted() {
+        inFlight.increment();
+        QueryCounter.reset();
+    }
+
+    // Javalin's request logger, called once per request when it is done
+    public void requestFinished(Context ctx, Float executionTimeMs) {
+        inFlight.decrement();
+        String route;
+        try {
+            route = ctx.endpointHandlerPath();
+        } catch (IllegalStateException e) {
+            route = "unmatched"; // failed in a before handler
+        }
+        int status = Math.min(Math.max(ctx.statusCode(), 100), 599) - 100;
+        AtomicReferenceArray<LatencyHistogram> histograms = routes.get(route);
+        if (histograms == null) {
+            histograms = routes.computeIfAbsent(route, r -> new AtomicReferenceArray<>(METHODS.length * STATUS_SLOTS));
+        }
+        int method = ctx.method().ordinal();
+        slot(histograms, method * STATUS_SLOTS + status).record((long) (executionTimeMs * 1000));
+
+        AtomicReferenceArray<LatencyHistogram> statementCounts = statements.get(route);
+        if (statementCounts == null) {
+            statementCounts = statements.computeIfAbsent(route, r -> new AtomicReferenceArray<>(METHODS.length));
+        }
+        slot(statementCounts, method).record(QueryCounter.get());
+    }
+
+    private static LatencyHistogram slot(AtomicReferenceArray<LatencyHistogram> histograms, int slot) {
+        LatencyHistogram histogram = histograms.get(slot);
+        if (histogram == null) {
+            histograms.compareAndSet(slot, null, new LatencyHistogram());
+            histogram = histograms.get(slot);
+        }
+        return histogram;
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        writeRequests(out);
+        writeStatements(out);
+        writeGauge(out, "http_server_requests_in_flight", "Requests currently being handled", inFlight.sum());
+        writePool(out);
+        writeUnitOfWork(out);
+        writeSecurity(out);
+        writeGauge(out, "registration_counters_loaded", "Events with an in-memory registration counter", RegistrationCounters.size());
+        writeCatalogue(out);
+        writeHibernate(out);
+        writeJvm(out);
+        return out.toString();
+    }
+
+    private void writeRequests(StringBuilder out) {
+        out.append("# HELP http_server_requests_seconds Request latency by route, method and status\n");
+        out.append("# TYPE http_server_requests_seconds histogram\n");
+        StringBuilder quantiles = new StringBuilder();
+        for (Map.Entry<String, AtomicReferenceArray<LatencyHistogram>> entry : new TreeMap<>(routes).entrySet()) {
+            AtomicReferenceArray<LatencyHistogram> histograms = entry.getValue();
+            for (int slot = 0; slot < histograms.length(); slot++) {
+                LatencyHistogram histogram = histograms.get(slot);
+                if (histogram == null) {
+                    continue;
+                }
+                String labels = "method=\"" + METHODS[slot / STATUS_SLOTS] + "\",route=\"" + escape(entry.getKey())
+                        + "\",status=\"" + (slot % STATUS_SLOTS + 100) + "\"";
+                for (double bucket : BUCKETS_SECONDS) {
+                    out.append("http_server_requests_seconds_bucket{").append(labels).append(",le=\"").append(bucket).append("\"} ")
+                            .append(histogram.countAtOrBelow((long) (bucket * 1_000_000))).append('\n');
+                }
+                out.append("http_server_requests_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(histogram.getCount()).append('\n');
+                out.append("http_server_requests_seconds_sum{").append(labels).append("} ").append(histogram.getSum() / 1e6).append('\n');
+                out.append("http_server_requests_seconds_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+                for (double quantile : QUANTILES) {
+                    quantiles.append("http_server_requests_latency_seconds{").append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                            .append(histogram.getPercentile(quantile) / 1e6).append('\n');
+                }
+            }
+        }
+        out.append("# HELP http_server_requests_latency_seconds Latency percentiles by route, method and status\n");
+        out.append("# TYPE http_server_requests_latency_seconds gauge\n");
+        out.append(quantiles);
+    }
+
+    // The max next to the mean makes an N+1 visible: a fixed-statement route has max == mean whatever the data
+    private void writeStatements(StringBuilder out) {
+        out.append("# HELP http_server_request_db_statements SQL statements per request by route\n");
+        out.append("# TYPE http_server_request_db_statements summary\n");
+        StringBuilder max = new StringBuilder("# HELP http_server_request_db_statements_max Most SQL statements in one request by route\n"
+                + "# TYPE http_server_request_db_statements_max gauge\n");
+        for (Map.Entry<String, AtomicReferenceArray<LatencyHistogram>> entry : new TreeMap<>(statements).entrySet()) {
+            AtomicReferenceArray<LatencyHistogram> histograms = entry.getValue();
+            for (int method = 0; method < histograms.length(); method++) {
+                LatencyHistogram histogram = histograms.get(method);
+                if (histogram == null) {
+                    continue;
+                }
+                String labels = "{method=\"" + METHODS[method] + "\",route=\"" + escape(entry.getKey()) + "\"} ";
+                out.append("http_server_request_db_statements_sum").append(labels).append(histogram.getSum()).append('\n');
+                out.append("http_server_request_db_statements_count").append(labels).append(histogram.getCount()).append('\n');
+                max.append("http_server_request_db_statements_max").append(labels).append(histogram.getMax()).append('\n');
+            }
+        }
+        out.append(max);
+        writeCounter(out, "db_statements_total", "SQL statements prepared by Hibernate", QueryCounter.getTotal());
+    }
+
+    private void writePool(StringBuilder out) {
+        PoolStatsDTO pool = HibernateConfig.getPoolStats();
+        writeGauge(out, "db_pool_connections_active", "Connections in use", pool.getActiveConnections());
+        writeGauge(out, "db_pool_connections_idle", "Idle connections", pool.getIdleConnections());
+        writeGauge(out, "db_pool_connections_max", "Maximum pool size", pool.getMaximumPoolSize());
+        writeGauge(out, "db_pool_threads_awaiting", "Threads waiting for a connection", pool.getThreadsAwaitingConnection());
+    }
+
+    private void writeUnitOfWork(StringBuilder out) {
+        UnitOfWorkStatsDTO stats = UnitOfWork.getStats();
+        writeCounter(out, "uow_entity_managers_opened_total", "Request-scoped EntityManagers opened", stats.getEntityManagersOpened());
+        writeCounter(out, "uow_long_held_total", "EntityManagers held longer than the threshold", stats.getLongHeld());
+        writeCounter(out, "uow_leaked_scopes_total", "Request scopes that were never ended", stats.getLeakedScopes());
+        writeGauge(out, "db_limiter_permits_available", "Free database concurrency permits", stats.getAvailablePermits());
+        writeGauge(out, "db_limiter_waiting", "Requests waiting for a database permit", stats.getWaitingForPermit());
+        writeCounter(out, "db_limiter_timeouts_total", "Requests rejected with 503 by the database limiter", stats.getPermitTimeouts());
+    }
+
+    private void writeSecurity(StringBuilder out) {
+        TokenCacheStatsDTO tokens = TokenVerifier.getInstance().getStats();
+        writeGauge(out, "token_cache_size", "Verified tokens in the cache", tokens.getSize());
+        writeCounter(out, "token_cache_hits_total", "Token verifications served from the cache", tokens.getHits());
+        writeCounter(out, "token_cache_misses_total", "Token verifications that parsed and checked the HMAC", tokens.getMisses());
+        writeCounter(out, "token_rejected_total", "Tokens that failed verification", tokens.getRejected());
+        writeGauge(out, "token_verify_avg_seconds", "Average time of a full verification", tokens.getAvgVerifyMicros() / 1e6);
+
+        PasswordHasherStatsDTO passwords = PasswordHasher.getInstance().getStats();
+        writeGauge(out, "password_hasher_queued", "Hash jobs waiting for a worker", passwords.getQueued());
+        writeGauge(out, "password_hasher_active", "Hash jobs running", passwords.getActiveThreads());
+        writeCounter(out, "password_hasher_rejected_total", "Hash jobs rejected with 503", passwords.getRejected() + passwords.getTimedOut());
+        writeGauge(out, "password_hasher_cost", "BCrypt work factor", passwords.getCost());
+    }
+
+    private void writeCatalogue(StringBuilder out) {
+        CatalogueSnapshot snapshot = CatalogueSnapshot.getInstance();
+        if (snapshot == null) {
+            return;
+        }
+        CatalogueSnapshotStatsDTO stats = snapshot.getStats();
+        writeGauge(out, "catalogue_snapshot_current", "1 while the snapshot matches the catalogue version", stats.getVersion() == stats.getCatalogueVersion() ? 1 : 0);
+        writeGauge(out, "catalogue_snapshot_bytes", "Size of the plain JSON snapshot", stats.getJsonBytes());
+        writeGauge(out, "catalogue_snapshot_gzip_bytes", "Size of the gzip'ed snapshot", stats.getGzipBytes());
+        writeCounter(out, "catalogue_snapshot_rebuilds_total", "Snapshot rebuilds", stats.getRebuilds());
+        writeCounter(out, "catalogue_snapshot_failed_rebuilds_total", "Snapshot rebuilds that failed", stats.getFailedRebuilds());
+        writeGauge(out, "catalogue_snapshot_rebuild_seconds", "Duration of the last rebuild", stats.getLastRebuildMs() / 1e3);
+        writeCounter(out, "catalogue_snapshot_served_total", "Catalogue responses served from the snapshot", stats.getServed());
+    }
+
+    private void writeHibernate(StringBuilder out) {
+        Statistics statistics = HibernateConfig.getStatistics();
+        writeCounter(out, "hibernate_sessions_opened_total", "Sessions opened", statistics.getSessionOpenCount());
+        writeCounter(out, "hibernate_transactions_total", "Transactions", statistics.getTransactionCount());
+        writeCounter(out, "hibernate_statements_prepared_total", "JDBC statements prepared", statistics.getPrepareStatementCount());
+        writeCounter(out, "hibernate_connections_obtained_total", "JDBC connections obtained", statistics.getConnectCount());
+        writeCounter(out, "hibernate_flushes_total", "Session flushes", statistics.getFlushCount());
+        writeCounter(out, "hibernate_entities_loaded_total", "Entities loaded", statistics.getEntityLoadCount());
+        writeCounter(out, "hibernate_entities_fetched_total", "Entities fetched lazily", statistics.getEntityFetchCount());
+        writeCounter(out, "hibernate_collections_fetched_total", "Collections fetched lazily", statistics.getCollectionFetchCount());
+        writeCounter(out, "hibernate_second_level_cache_hits_total", "Second-level cache hits", statistics.getSecondLevelCacheHitCount());
+        writeCounter(out, "hibernate_second_level_cache_misses_total", "Second-level cache misses", statistics.getSecondLevelCacheMissCount());
+        writeCounter(out, "hibernate_query_cache_hits_total", "Query cache hits", statistics.getQueryCacheHitCount());
+        writeCounter(out, "hibernate_query_cache_misses_total", "Query cache misses", statistics.getQueryCacheMissCount());
+        writeCounter(out, "hibernate_optimistic_failures_total", "Optimistic lock failures", statistics.getOptimisticFailureCount());
+
+        // One series per query the DAOs run, Hibernate keeps the numbers (hibernate.generate_statistics)
+        out.append("# HELP hibernate_query_executions_total Executions per query\n# TYPE hibernate_query_executions_total counter\n");
+        StringBuilder time = new StringBuilder("# HELP hibernate_query_seconds_total Time spent per query\n# TYPE hibernate_query_seconds_total counter\n");
+        StringBuilder max = new StringBuilder("# HELP hibernate_query_max_seconds Slowest execution per query\n# TYPE hibernate_query_max_seconds gauge\n");
+        StringBuilder rows = new StringBuilder("# HELP hibernate_query_rows_total Rows returned per query\n# TYPE hibernate_query_rows_total counter\n");
+        for (String query : statistics.getQueries()) {
+            QueryStatistics queryStatistics = statistics.getQueryStatistics(query);
+            String labels = "{query=\"" + escape(query) + "\"} ";
+            out.append("hibernate_query_executions_total").append(labels).append(queryStatistics.getExecutionCount()).append('\n');
+            time.append("hibernate_query_seconds_total").append(labels).append(queryStatistics.getExecutionTotalTime() / 1e3).append('\n');
+            max.append("hibernate_query_max_seconds").append(labels).append(queryStatistics.getExecutionMaxTime() / 1e3).append('\n');
+            rows.append("hibernate_query_rows_total").append(labels).append(queryStatistics.getExecutionRowCount()).append('\n');
+        }
+        out.append(time).append(max).append(rows);
+    }
+
+    private void writeJvm(StringBuilder out) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        writeGauge(out, "jvm_heap_used_bytes", "Used heap", memory.getHeapMemoryUsage().getUsed());
+        writeGauge(out, "jvm_heap_committed_bytes", "Committed heap", memory.getHeapMemoryUsage().getCommitted());
+        writeGauge(out, "jvm_threads_live", "Live platform threads", ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    private static void writeGauge(StringBuilder out, String name, String help, double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" gauge\n")
+                .append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n")
+                .append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ").replace("\r", " ");
+    }
+}
@@ -0,0 +1,49 @@
+package app.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+
+Counts the SQL statements Hibernate prepares, per thread. Registered as the session factory's
+StatementInspector in HibernateConfig, so it sees every statement: JPQL, native, the inserts of a flush
+(a JDBC batch counts once). Query and second-level cache hits never reach it, which is the point.
+
+MetricsRegistry resets it when a request starts and records the count per route when it ends, so
+/api/admin/metrics shows whether a route runs a fixed number of statements or one more per row (N+1).
+Elsewhere count() measures a single call; the DAO tests assert on it (see QueryCounts in src/test).
+
+*/
+public class QueryCounter implements StatementInspector {
+    private static final ThreadLocal<long[]> CURRENT = ThreadLocal.withInitial(() -> new long[1]);
+    private static final LongAdder total = new LongAdder();
+
+    @Override
+    public String inspect(String sql) {
+        CURRENT.get()[0]++;
+        total.increment();
+        return sql; // unchanged
+    }
+
+    public static void reset() {
+        CURRENT.get()[0] = 0;
+    }
+
+    // Statements on this thread since the last reset()
+    public static long get() {
+        return CURRENT.get()[0];
+    }
+
+    public static long getTotal() {
+        return total.sum();
+    }
+
+    // Statements the action runs on this thread
+    public static long count(Runnable action) {
+        long[] counter = CURRENT.get();
+        long before = counter[0];
+        action.run();
+        return counter[0] - before;
+    }
+}
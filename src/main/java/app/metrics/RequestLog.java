@@ -0,0 +1,51 @@
+package app.metrics;
+
+import io.javalin.http.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+
+Access log on the "app.requests" logger. Logging every request costs more than the request itself on
+the cheap routes, so only a sample goes out: every 5xx and every request slower than REQUEST_LOG_SLOW_MS
+is logged, the rest with probability REQUEST_LOG_SAMPLE_RATE (0 turns sampling off, 1 logs everything).
+The counts and latencies for all requests are in MetricsRegistry anyway.
+
+The events are key/value pairs, so the JSON layout in log4j2.xml turns them into fields instead of text.
+
+*/
+public class RequestLog {
+    private static final Logger log = LoggerFactory.getLogger("app.requests");
+    private static final double SAMPLE_RATE = getEnvDouble("REQUEST_LOG_SAMPLE_RATE", 0.01);
+    private static final double SLOW_MS = getEnvDouble("REQUEST_LOG_SLOW_MS", 1000);
+
+    private RequestLog() {
+    }
+
+    public static void requestFinished(Context ctx, Float executionTimeMs) {
+        int status = ctx.statusCode();
+        boolean error = status >= 500;
+        boolean slow = executionTimeMs >= SLOW_MS;
+        if (!error && !slow && (SAMPLE_RATE <= 0 || ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE)) {
+            return;
+        }
+        if (!(error ? log.isWarnEnabled() : log.isInfoEnabled())) {
+            return;
+        }
+        (error ? log.atWarn() : log.atInfo())
+                .setMessage("request")
+                .addKeyValue("http.method", ctx.method().name())
+                .addKeyValue("url.path", ctx.path())
+                .addKeyValue("http.status", status)
+                .addKeyValue("duration.ms", executionTimeMs)
+                .addKeyValue("sampled", !error && !slow)
+                .log();
+    }
+
+    private static double getEnvDouble(String name, double defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
@@ -6,6 +6,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -17,14 +19,31 @@ import java.util.Set;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "event")
+@Table(name = "event", indexes = {
+        // Leading filter column + event_id, so keyset pages (WHERE ... AND event_id > ? ORDER BY event_id) stay index-only
+        @Index(name = "idx_event_category", columnList = "category_category_id, event_id"),
+        @Index(name = "idx_event_status", columnList = "status, event_id"),
+        @Index(name = "idx_event_location", columnList = "location, event_id"),
+        @Index(name = "idx_event_date", columnList = "date, event_id"),
+        // Start time order (date, then time) for the upcoming/between pages when EventTimeline isn't loaded yet
+        @Index(name = "idx_event_start", columnList = "date, time, event_id"),
+        @Index(name = "idx_event_location_start", columnList = "location, date, time, event_id")
+})
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NamedQuery(name = "Event.findAll", query = "SELECT e FROM Event e")
+// Fetch plan for everything that ends up in an EventDTO, used by the EventDAO finders
+@NamedEntityGraph(name = Event.GRAPH_WITH_CATEGORY, attributeNodes = @NamedAttributeNode("category"))
 
 public class Event {
+    public static final String GRAPH_WITH_CATEGORY = "Event.withCategory";
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Sequence instead of IDENTITY so inserts can be JDBC-batched; the pooled optimizer hands out 50 ids per
+    // round trip. EventDAO.alignIdSequence() moves the sequence past ids made by the old identity column.
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "event_seq")
+    @SequenceGenerator(name = "event_seq", sequenceName = "event_seq", allocationSize = 50)
     @Column(name= "event_id", nullable = false, unique = true)
     private int EventId;
     @Column(name= "title")
@@ -50,9 +69,13 @@ public class Event {
     //    @Lob // This annotation is used to specify that the column should be treated as a Large Object
 //    @Column(name = "image", columnDefinition = "bytea", nullable = true) // For PostgreSQL, bytea type is used to store binary data
 //    private byte[] image;
-    @ManyToOne
+    // LAZY: registrations and seat counting load events without needing the category. The queries that
+    // build EventDTOs fetch it with the entity graph above (or it comes from the second-level cache).
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "category_category_id")
     private Category category;
-    @ManyToMany
+    // user_events is owned by User.events; signups go through RegistrationDAO, not this collection
+    @ManyToMany(mappedBy = "events", fetch = FetchType.LAZY)
     private  Set <User> users = new HashSet<>();
 
     public Event(String title, String description, LocalDateTime date, LocalTime time, int duration, int capacity, Location location, String instructor, double price, String status, Category category) {
@@ -0,0 +1,24 @@
+package app.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Seat counter for an event, kept in its own row so registrations can lock and bump it
+// with a single conditional UPDATE instead of loading Event.users
+@Getter
+@Setter
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "event_seats")
+public class EventSeats {
+    @Id
+    @Column(name = "event_id", nullable = false)
+    private int eventId;
+
+    @Column(name = "seats_taken", nullable = false)
+    private int seatsTaken;
+}
@@ -6,7 +6,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.mindrot.jbcrypt.BCrypt;
+import app.security.PasswordHasher;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -17,9 +17,14 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Table(name = "users")
+// Login needs the roles for the token, nothing else does
+@NamedEntityGraph(name = User.GRAPH_WITH_ROLES, attributeNodes = @NamedAttributeNode("roles"))
 public class User {
+    public static final String GRAPH_WITH_ROLES = "User.withRoles";
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence like Event, so bulk provisioning can batch its inserts (UserDAO.alignIdSequence())
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     @Column(name= "id", nullable = false, unique = true)
     private int id;
     @Column(name = "username")
@@ -31,40 +36,38 @@ public class User {
     @Column(name = "phonenumber")
     private int phoneNumber;
 
-    @ManyToMany
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(name = "user_roles",
             joinColumns = @JoinColumn(name = "user_name", referencedColumnName = "username"),
             inverseJoinColumns = @JoinColumn(name = "role_name", referencedColumnName = "name"))
     private Set<Role> roles = new HashSet<>();
 
-    @ManyToMany
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(name = "user_events",
             joinColumns = @JoinColumn(name = "user_id", referencedColumnName = "id"),
-            inverseJoinColumns = @JoinColumn(name = "event_id", referencedColumnName = "event_id"))
+            inverseJoinColumns = @JoinColumn(name = "event_id", referencedColumnName = "event_id"),
+            indexes = @Index(name = "idx_user_events_event", columnList = "event_id, user_id"))
     private Set<Event> events = new HashSet<>();
 
 
     public User(String name, String password) {
         this.name = name;
         this.password = password;
-        String salt = BCrypt.gensalt();
-        this.password = BCrypt.hashpw(password, salt);
+        this.password = PasswordHasher.getInstance().hash(password);
     }
 
 
     public User(String name, String password, String email, int phoneNumber) {
         this.name = name;
         this.password = password;
-        String salt = BCrypt.gensalt();
-        this.password = BCrypt.hashpw(password, salt);
+        this.password = PasswordHasher.getInstance().hash(password);
         this.email= email;
         this.phoneNumber= phoneNumber;
     }
 
     public User(String password) {
         this.password = password;
-        String salt = BCrypt.gensalt();
-        this.password = BCrypt.hashpw(password, salt);
+        this.password = PasswordHasher.getInstance().hash(password);
     }
 
     public User(String name, Set<Event> events) {
@@ -73,7 +76,7 @@ public class User {
     }
 
     public boolean verifyUser(String password) {
-        return BCrypt.checkpw(password, this.password);
+        return PasswordHasher.getInstance().verify(password, this.password);
     }
 
 
@@ -0,0 +1,35 @@
+package app.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// One user waiting for a seat on a full event. The queue order is the id order,
+// and (event_id, id) is indexed so the head of an event's queue is a single index lookup.
+@Getter
+@Setter
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "event_waitlist",
+        uniqueConstraints = @UniqueConstraint(name = "uq_waitlist_event_user", columnNames = {"event_id", "user_id"}),
+        indexes = @Index(name = "idx_waitlist_event_order", columnList = "event_id, id"))
+public class WaitlistEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, unique = true)
+    private long id;
+
+    @Column(name = "event_id", nullable = false)
+    private int eventId;
+
+    @Column(name = "user_id", nullable = false)
+    private int userId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
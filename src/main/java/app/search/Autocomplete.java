@@ -0,0 +1,166 @@
+package app.search;
+
+import app.catalogue.EventFeed;
+import app.dao.EventDAO;
+import app.dto.AutocompleteStatsDTO;
+import app.dto.CompletionDTO;
+import app.dto.EventDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+
+Typeahead over event titles, instructors and category names. Only upcoming events count, and a
+completion weighs 1 per upcoming event plus their registrations, so the popular things come first.
+
+The CompletionIndex is immutable. After a catalogue change (from the EventFeed) a new one is built
+AUTOCOMPLETE_REBUILD_DEBOUNCE_MS later on a background thread and swapped in with one volatile write,
+queries keep using the old one meanwhile. Registrations change without the catalogue changing, so it is
+also rebuilt every AUTOCOMPLETE_REFRESH_SECONDS. AUTOCOMPLETE_MAX_BYTES caps its estimated size, the
+lightest completions are left out beyond that.
+
+*/
+public class Autocomplete implements EventFeed.Subscriber {
+    private static final Logger log = LoggerFactory.getLogger(Autocomplete.class);
+    private static final long DEBOUNCE_MS = getEnvLong("AUTOCOMPLETE_REBUILD_DEBOUNCE_MS", 500);
+    private static final long REFRESH_SECONDS = getEnvLong("AUTOCOMPLETE_REFRESH_SECONDS", 300);
+    private static final long MAX_BYTES = getEnvLong("AUTOCOMPLETE_MAX_BYTES", 32L * 1024 * 1024);
+    private static final int COUNTS_BATCH = 1000; // ids per registration count query
+    private static Autocomplete instance;
+
+    private final EventDAO eventDAO;
+    private final EventFeed feed;
+    private volatile CompletionIndex index = CompletionIndex.empty();
+    private volatile boolean ready;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autocomplete");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder failedRebuilds = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private volatile long lastRebuildMs;
+
+    private Autocomplete(EventDAO eventDAO, EventFeed feed) {
+        this.eventDAO = eventDAO;
+        this.feed = feed;
+    }
+
+    public static synchronized Autocomplete start(EventDAO eventDAO, EventFeed feed) {
+        if (instance == null) {
+            instance = new Autocomplete(eventDAO, feed);
+            feed.subscribe(instance);
+            instance.rebuilder.scheduleWithFixedDelay(() -> instance.scheduleRebuild(0), REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+        }
+        return instance;
+    }
+
+    public static synchronized Autocomplete getInstance() {
+        return instance;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<CompletionDTO> complete(String prefix, int limit) {
+        queries.increment();
+        return index.complete(prefix, limit);
+    }
+
+    @Override
+    public void loaded(List<EventDTO> events) {
+        scheduleRebuild(0);
+    }
+
+    @Override
+    public void changed(List<EventDTO> saved, Set<Integer> deletedIds) {
+        scheduleRebuild(DEBOUNCE_MS);
+    }
+
+    private void scheduleRebuild(long delayMs) {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuilder.schedule(this::rebuild, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rebuild() {
+        rebuildScheduled.set(false);
+        long start = System.nanoTime();
+        try {
+            LocalDate today = LocalDate.now();
+            List<EventDTO> upcoming = new ArrayList<>();
+            for (EventDTO event : feed.getEvents()) {
+                if (event.getDate() != null && !event.getDate().isBefore(today)) {
+                    upcoming.add(event);
+                }
+            }
+            Map<Integer, Long> registrations = getRegistrationCounts(upcoming);
+
+            CompletionIndex.Builder builder = new CompletionIndex.Builder();
+            for (EventDTO event : upcoming) {
+                long weight = 1 + registrations.getOrDefault(event.getEventId(), 0L);
+                builder.add(event.getTitle(), CompletionIndex.Type.TITLE, weight);
+                builder.add(event.getInstructor(), CompletionIndex.Type.INSTRUCTOR, weight);
+                if (event.getCategory() != null) {
+                    builder.add(event.getCategory().getCategoryName(), CompletionIndex.Type.CATEGORY, weight);
+                }
+            }
+            CompletionIndex built = builder.build(MAX_BYTES);
+            if (built.getDropped() > 0) {
+                log.warn("Autocomplete left out {} completions to stay within {} bytes", built.getDropped(), MAX_BYTES);
+            }
+            index = built;
+            ready = true;
+            lastRebuildMs = (System.nanoTime() - start) / 1_000_000;
+            rebuilds.increment();
+        } catch (Exception e) {
+            failedRebuilds.increment();
+            log.warn("Autocomplete rebuild failed, keeping the previous index", e);
+        }
+    }
+
+    private Map<Integer, Long> getRegistrationCounts(List<EventDTO> events) {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (int from = 0; from < events.size(); from += COUNTS_BATCH) {
+            List<Integer> ids = events.subList(from, Math.min(from + COUNTS_BATCH, events.size())).stream()
+                    .map(EventDTO::getEventId)
+                    .toList();
+            counts.putAll(eventDAO.getRegistrationsCounts(ids));
+        }
+        return counts;
+    }
+
+    public AutocompleteStatsDTO getStats() {
+        CompletionIndex current = index;
+        return new AutocompleteStatsDTO(
+                current.getCompletions(),
+                current.getKeys(),
+                current.getEstimatedBytes(),
+                MAX_BYTES,
+                current.getDropped(),
+                rebuilds.sum(),
+                failedRebuilds.sum(),
+                lastRebuildMs,
+                queries.sum());
+    }
+
+    private static long getEnvLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
@@ -0,0 +1,336 @@
+package app.search;
+
+import app.dto.CompletionDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/*
+
+Immutable typeahead index: what a user may be typing -> the best k completions. Built by Builder in one
+go and then only read, Autocomplete swaps in a new one after each rebuild.
+
+Every completion (a distinct title, instructor or category name) is matched from the start of each of
+its words, so "beg" finds "Yoga for begyndere". Rather than storing those suffixes as strings, a key is
+just (completion, offset) in two int arrays, sorted by the normalized text from that offset. A prefix is
+then a range of keys found with two binary searches.
+
+To pick the k heaviest completions in that range without looking at all of it, there is a max segment
+tree over the keys' weights (argmax per node). The range splits into O(log n) nodes, those go on a heap,
+and each pop either yields a completion or pushes its node's two children. A completion reachable from
+several of its words can come up more than once, duplicates are skipped.
+
+Memory: the strings plus 8 bytes per key and 8 bytes per leaf of the tree (rounded up to a power of
+two). Builder.build(maxBytes) drops the lightest completions until the estimate fits.
+
+*/
+public class CompletionIndex {
+    public enum Type { TITLE, INSTRUCTOR, CATEGORY }
+
+    private static final Type[] TYPES = Type.values();
+
+    private final String[] texts; // as shown
+    private final String[] normalized; // as matched, see normalize()
+    private final byte[] types;
+    private final long[] weights;
+    private final int[] keyCompletion;
+    private final int[] keyOffset;
+    private final int[] tree; // argmax key index per node, 1 is the root, leaves start at 'leaves'
+    private final int leaves;
+    private final long estimatedBytes;
+    private final int dropped;
+
+    private CompletionIndex(String[] texts, String[] normalized, byte[] types, long[] weights, int[] keyCompletion, int[] keyOffset, int dropped) {
+        this.texts = texts;
+        this.normalized = normalized;
+        this.types = types;
+        this.weights = weights;
+        this.keyCompletion = keyCompletion;
+        this.keyOffset = keyOffset;
+        this.dropped = dropped;
+        int keys = keyCompletion.length;
+        leaves = Integer.highestOneBit(Math.max(keys, 1) * 2 - 1);
+        tree = new int[leaves * 2];
+        Arrays.fill(tree, -1);
+        for (int i = 0; i < keys; i++) {
+            tree[leaves + i] = i;
+        }
+        for (int node = leaves - 1; node >= 1; node--) {
+            tree[node] = heavier(tree[node * 2], tree[node * 2 + 1]);
+        }
+        estimatedBytes = estimateBytes(texts, normalized) + 8L * keys + 4L * tree.length;
+    }
+
+    public static CompletionIndex empty() {
+        return new Builder().build(Long.MAX_VALUE);
+    }
+
+    // The k heaviest completions starting with the prefix, heaviest first
+    public List<CompletionDTO> complete(String prefix, int k) {
+        String query = normalizeQuery(prefix);
+        List<CompletionDTO> completions = new ArrayList<>(k);
+        if (query.isEmpty() || keyCompletion.length == 0) {
+            return completions;
+        }
+        int from = lowerBound(query);
+        int to = upperBound(query, from);
+        if (from >= to) {
+            return completions;
+        }
+
+        PriorityQueue<Integer> nodes = new PriorityQueue<>(Comparator.comparingLong((Integer node) -> weightOf(tree[node])).reversed()
+                .thenComparingInt(node -> tree[node]));
+        // The canonical nodes covering [from, to)
+        for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) {
+                nodes.add(lo++);
+            }
+            if ((hi & 1) == 1) {
+                nodes.add(--hi);
+            }
+        }
+        BitSet seen = new BitSet();
+        while (!nodes.isEmpty() && completions.size() < k) {
+            int node = nodes.poll();
+            if (node >= leaves) {
+                int completion = keyCompletion[tree[node]];
+                if (!seen.get(completion)) {
+                    seen.set(completion);
+                    completions.add(new CompletionDTO(texts[completion], TYPES[types[completion]].name(), weights[completion]));
+                }
+            } else {
+                for (int child = node * 2; child <= node * 2 + 1; child++) {
+                    if (tree[child] >= 0) {
+                        nodes.add(child);
+                    }
+                }
+            }
+        }
+        return completions;
+    }
+
+    public int getCompletions() {
+        return texts.length;
+    }
+
+    public int getKeys() {
+        return keyCompletion.length;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    // Completions left out to stay within the memory budget
+    public int getDropped() {
+        return dropped;
+    }
+
+    // First key whose text is >= the query
+    private int lowerBound(String query) {
+        int lo = 0;
+        int hi = keyCompletion.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKey(mid, query) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First key from 'from' on that doesn't start with the query
+    private int upperBound(String query, int from) {
+        int lo = from;
+        int hi = keyCompletion.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (startsWith(mid, query)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int compareKey(int key, String query) {
+        return compareFrom(normalized[keyCompletion[key]], keyOffset[key], query, 0);
+    }
+
+    // a.substring(offsetA).compareTo(b.substring(offsetB)) without the copies
+    private static int compareFrom(String a, int offsetA, String b, int offsetB) {
+        int length = Math.min(a.length() - offsetA, b.length() - offsetB);
+        for (int i = 0; i < length; i++) {
+            int difference = a.charAt(offsetA + i) - b.charAt(offsetB + i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return (a.length() - offsetA) - (b.length() - offsetB);
+    }
+
+    private boolean startsWith(int key, String query) {
+        return normalized[keyCompletion[key]].startsWith(query, keyOffset[key]);
+    }
+
+    private long weightOf(int key) {
+        return key < 0 ? Long.MIN_VALUE : weights[keyCompletion[key]];
+    }
+
+    // Ties go to the lower key, which is the alphabetically first
+    private int heavier(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return weightOf(b) > weightOf(a) ? b : a;
+    }
+
+    // Words as the search index sees them (folded, "aa" -> "å"), but not stemmed, joined by single spaces
+    static String normalize(String text) {
+        return String.join(" ", DanishAnalyzer.words(text));
+    }
+
+    // A query that ends in a space only matches whole words: "yoga " finds "Yoga" and "Yoga for..." but not
+    // "Yogalates". That works because the indexed texts end in a space too.
+    static String normalizeQuery(String prefix) {
+        String query = normalize(prefix);
+        boolean wordFinished = !prefix.isEmpty() && !Character.isLetterOrDigit(prefix.charAt(prefix.length() - 1));
+        return wordFinished && !query.isEmpty() ? query + " " : query;
+    }
+
+    private static long estimateBytes(String[] texts, String[] normalized) {
+        long bytes = 0;
+        for (int i = 0; i < texts.length; i++) {
+            bytes += stringBytes(texts[i]) + stringBytes(normalized[i]) + 8 + 1 + 8; // two references, type, weight
+        }
+        return bytes;
+    }
+
+    // Header and array overhead included; Latin-1 strings take one byte per char, the rest two
+    private static long stringBytes(String text) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 256) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return 40 + (long) text.length() * bytesPerChar;
+    }
+
+    public static class Builder {
+        private final Map<String, Integer> byKey = new HashMap<>();
+        private final List<String> texts = new ArrayList<>();
+        private final List<String> normalized = new ArrayList<>();
+        private final List<Type> types = new ArrayList<>();
+        private final List<Long> weights = new ArrayList<>();
+
+        // The same text and type added twice is one completion with the weights added up
+        public Builder add(String text, Type type, long weight) {
+            if (text == null || text.isBlank()) {
+                return this;
+            }
+            String norm = normalize(text);
+            if (norm.isEmpty()) {
+                return this;
+            }
+            norm += " ";
+            Integer existing = byKey.putIfAbsent(type.ordinal() + ":" + norm, texts.size());
+            if (existing != null) {
+                weights.set(existing, weights.get(existing) + weight);
+                return this;
+            }
+            texts.add(text.strip());
+            normalized.add(norm);
+            types.add(type);
+            weights.add(weight);
+            return this;
+        }
+
+        public CompletionIndex build(long maxBytes) {
+            long[] costs = new long[texts.size()];
+            long total = 0;
+            for (int i = 0; i < costs.length; i++) {
+                int keys = wordStarts(normalized.get(i)).length;
+                // strings, references, type and weight, and per key its two ints and (rounded up) two tree leaves
+                costs[i] = stringBytes(texts.get(i)) + stringBytes(normalized.get(i)) + 17 + 8L * keys + 16L * keys;
+                total += costs[i];
+            }
+            List<Integer> kept = new ArrayList<>(costs.length);
+            if (total <= maxBytes) {
+                for (int i = 0; i < costs.length; i++) {
+                    kept.add(i);
+                }
+            } else {
+                // Heaviest first, so whatever doesn't fit the budget is the least wanted
+                List<Integer> order = new ArrayList<>(costs.length);
+                for (int i = 0; i < costs.length; i++) {
+                    order.add(i);
+                }
+                order.sort(Comparator.comparingLong((Integer i) -> weights.get(i)).reversed());
+                long bytes = 0;
+                for (Integer i : order) {
+                    if (bytes + costs[i] > maxBytes) {
+                        break;
+                    }
+                    bytes += costs[i];
+                    kept.add(i);
+                }
+            }
+
+            int n = kept.size();
+            String[] keptTexts = new String[n];
+            String[] keptNormalized = new String[n];
+            byte[] keptTypes = new byte[n];
+            long[] keptWeights = new long[n];
+            List<int[]> keys = new ArrayList<>();
+            for (int c = 0; c < n; c++) {
+                int i = kept.get(c);
+                keptTexts[c] = texts.get(i);
+                keptNormalized[c] = normalized.get(i);
+                keptTypes[c] = (byte) types.get(i).ordinal();
+                keptWeights[c] = weights.get(i);
+                for (int offset : wordStarts(keptNormalized[c])) {
+                    keys.add(new int[]{c, offset});
+                }
+            }
+            keys.sort((a, b) -> compareFrom(keptNormalized[a[0]], a[1], keptNormalized[b[0]], b[1]));
+            int[] keyCompletion = new int[keys.size()];
+            int[] keyOffset = new int[keys.size()];
+            for (int k = 0; k < keys.size(); k++) {
+                keyCompletion[k] = keys.get(k)[0];
+                keyOffset[k] = keys.get(k)[1];
+            }
+            return new CompletionIndex(keptTexts, keptNormalized, keptTypes, keptWeights, keyCompletion, keyOffset, texts.size() - n);
+        }
+
+        // Where each word starts, the text ends with a space
+        private static int[] wordStarts(String text) {
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == ' ') {
+                    count++;
+                }
+            }
+            int[] starts = new int[count];
+            for (int i = 0, w = 1; w < count; i++) {
+                if (text.charAt(i) == ' ') {
+                    starts[w++] = i + 1;
+                }
+            }
+            return starts;
+        }
+    }
+}
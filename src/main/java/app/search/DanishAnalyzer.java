@@ -0,0 +1,130 @@
+package app.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+
+Turns event text and search queries into index terms, the same way for both:
+
+- lower case, split on anything that isn't a letter or a digit
+- accents folded the way Danish sorts them (é -> e, ä -> æ, ö -> ø, ü -> y), and the old "aa" spelling
+  read as "å", so "Aarhus" finds "Århus"
+- common Danish words (og, i, på, med, ...) dropped
+- a light stemmer that strips the plural and definite endings (-erne, -ene, -er, -en, -et, -e, ...),
+  so "kurserne", "kurset" and "kurser" are all "kurs". It never leaves fewer than 3 letters.
+
+Not Snowball, but predictable, and prefix matching covers most of the rest.
+
+*/
+public class DanishAnalyzer {
+    private static final Locale DANISH = Locale.forLanguageTag("da-DK");
+    private static final int MIN_STEM = 3;
+    private static final String[] SUFFIXES = {"erne", "ernes", "enes", "ene", "ens", "ers", "ets", "er", "en", "et", "e"};
+    private static final Set<String> STOP_WORDS = Set.of(
+            "af", "alle", "at", "da", "de", "den", "der", "det", "dig", "du", "eller", "en", "er", "et", "for",
+            "fra", "har", "hvor", "i", "ikke", "jeg", "kan", "man", "med", "men", "mig", "nå", "når", "og", "om",
+            "os", "over", "på", "sig", "som", "til", "ud", "under", "var", "vi", "vil", "være");
+
+    private DanishAnalyzer() {
+    }
+
+    // Index terms of a text, duplicates included (they count as term frequency)
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String word : words(text)) {
+            if (!STOP_WORDS.contains(word)) {
+                terms.add(stem(word));
+            }
+        }
+        return terms;
+    }
+
+    /*
+    Query terms. The last word is matched as a prefix (the user may still be typing it) unless the query
+    ends with a space, and it is kept even if it is a stop word, "me" may become "meditation". Such a
+    stop word is optional: when nothing starts with it, it is left out instead of failing the query.
+    */
+    public static List<QueryTerm> queryTerms(String query) {
+        List<String> words = words(query);
+        boolean lastIsPrefix = !query.isEmpty() && Character.isLetterOrDigit(query.charAt(query.length() - 1));
+        List<QueryTerm> terms = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            boolean last = i == words.size() - 1;
+            if (last && lastIsPrefix) {
+                terms.add(new QueryTerm(stem(word), true, STOP_WORDS.contains(word)));
+            } else if (!STOP_WORDS.contains(word)) {
+                terms.add(new QueryTerm(stem(word), false, false));
+            }
+        }
+        return terms;
+    }
+
+    // Lower cased, folded words, not stemmed and with stop words
+    public static List<String> words(String text) {
+        return split(text, true);
+    }
+
+    // Lower cased words as written, nothing folded. For Postgres, whose tsvector column sees the raw text:
+    // a folded query ("århus") would miss the "Aarhus" in it.
+    public static List<String> plainWords(String text) {
+        return split(text, false);
+    }
+
+    private static List<String> split(String text, boolean folded) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        String lower = text.toLowerCase(DANISH);
+        for (int i = 0; i < lower.length(); i++) {
+            char c = folded ? fold(lower.charAt(i)) : lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (!word.isEmpty()) {
+                words.add(finish(word, folded));
+            }
+        }
+        if (!word.isEmpty()) {
+            words.add(finish(word, folded));
+        }
+        return words;
+    }
+
+    private static String finish(StringBuilder word, boolean folded) {
+        String text = word.toString();
+        word.setLength(0);
+        return folded && text.contains("aa") ? text.replace("aa", "å") : text;
+    }
+
+    static String stem(String word) {
+        for (String suffix : SUFFIXES) {
+            if (word.endsWith(suffix) && word.length() - suffix.length() >= MIN_STEM) {
+                return word.substring(0, word.length() - suffix.length());
+            }
+        }
+        return word;
+    }
+
+    private static char fold(char c) {
+        return switch (c) {
+            case 'á', 'à', 'â', 'ã' -> 'a';
+            case 'é', 'è', 'ê', 'ë' -> 'e';
+            case 'í', 'ì', 'î', 'ï' -> 'i';
+            case 'ó', 'ò', 'ô', 'õ' -> 'o';
+            case 'ú', 'ù', 'û' -> 'u';
+            case 'ü' -> 'y';
+            case 'ä' -> 'æ';
+            case 'ö' -> 'ø';
+            default -> c;
+        };
+    }
+
+    // optional: a trailing stop word, see queryTerms()
+    public record QueryTerm(String text, boolean prefix, boolean optional) {
+    }
+}
@@ -0,0 +1,54 @@
+package app.search;
+
+import app.catalogue.EventFeed;
+import app.dao.EventDAO;
+import app.dto.EventSearchResultDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+
+Full-text event search. SEARCH_BACKEND picks where the queries go:
+
+    memory    (default) EventSearchIndex, an inverted index kept in sync through the EventFeed
+    postgres  a tsvector column with a GIN index, for catalogues too big to keep in every instance
+
+*/
+public class EventSearch {
+    private static final Logger log = LoggerFactory.getLogger(EventSearch.class);
+    private static EventSearch instance;
+
+    private final SearchBackend backend;
+
+    private EventSearch(SearchBackend backend) {
+        this.backend = backend;
+    }
+
+    public static synchronized EventSearch start(EventDAO eventDAO, EventFeed feed) {
+        if (instance == null) {
+            String name = System.getenv("SEARCH_BACKEND");
+            if ("postgres".equalsIgnoreCase(name)) {
+                instance = new EventSearch(new PostgresEventSearch(eventDAO));
+            } else {
+                EventSearchIndex index = new EventSearchIndex();
+                feed.subscribe(index);
+                instance = new EventSearch(index);
+            }
+            log.info("Event search uses the {} backend", instance.backend.getName());
+        }
+        return instance;
+    }
+
+    public static synchronized EventSearch getInstance() {
+        return instance;
+    }
+
+    public boolean isReady() {
+        return backend.isReady();
+    }
+
+    // The best 'limit' matches, best first
+    public EventSearchResultDTO search(String query, int limit) {
+        return backend.search(query, limit);
+    }
+}
@@ -0,0 +1,255 @@
+package app.search;
+
+import app.catalogue.EventFeed;
+import app.dao.IntObjectMap;
+import app.dto.EventDTO;
+import app.dto.EventSearchResultDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+
+Inverted index over title, instructor and description, kept up to date from the EventFeed: a changed
+event is taken out and put back in, nothing is rebuilt. Queries never touch the database.
+
+Terms are sorted (TreeMap), so a prefix is a range of terms. Every query term has to match (AND), the
+last one as a prefix, see DanishAnalyzer. The score of an event is the sum over the query terms of
+
+    idf * weight,    idf = ln(1 + events / events with the term)
+
+where the weight is the term's frequency per field (saturated, 1 + ln tf) times the field's boost:
+title 3, instructor 2, description 1. A prefix expansion counts PREFIX_FACTOR of an exact match, so
+"yoga" ranks "Yoga" above "Yogalates". Ties go to the lower event id.
+
+The rarest query term picks the candidates and the other terms are only looked up for those, so
+"salsa hold" costs about as much as "salsa", however many events say "hold".
+
+Reads share a read lock, the feed's updates take the write lock for the few microseconds they need.
+
+*/
+class EventSearchIndex implements SearchBackend, EventFeed.Subscriber {
+    private static final float TITLE_BOOST = 3;
+    private static final float INSTRUCTOR_BOOST = 2;
+    private static final float DESCRIPTION_BOOST = 1;
+    private static final float PREFIX_FACTOR = 0.7f;
+    private static final int MIN_PREFIX_LENGTH = 2; // a single letter only matches itself, not half the dictionary
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, IntObjectMap<Doc>> postings = new TreeMap<>();
+    private final IntObjectMap<Doc> docs = new IntObjectMap<>();
+    private volatile boolean ready;
+
+    // Not a record: the score maps key on it, and identity is all they need
+    private static final class Doc {
+        private final EventDTO event;
+        private final Map<String, Float> weights;
+
+        Doc(EventDTO event, Map<String, Float> weights) {
+            this.event = event;
+            this.weights = weights;
+        }
+
+        EventDTO event() {
+            return event;
+        }
+
+        Map<String, Float> weights() {
+            return weights;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void loaded(List<EventDTO> events) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            docs.clear();
+            events.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+    }
+
+    @Override
+    public void changed(List<EventDTO> saved, Set<Integer> deletedIds) {
+        lock.writeLock().lock();
+        try {
+            for (EventDTO event : saved) {
+                remove(event.getEventId());
+                add(event);
+            }
+            deletedIds.forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EventSearchResultDTO search(String query, int limit) {
+        List<DanishAnalyzer.QueryTerm> terms = DanishAnalyzer.queryTerms(query);
+        if (terms.isEmpty()) {
+            return new EventSearchResultDTO(query, getName(), 0, List.of());
+        }
+        lock.readLock().lock();
+        try {
+            List<List<Expansion>> expandedTerms = new ArrayList<>();
+            for (DanishAnalyzer.QueryTerm term : terms) {
+                List<Expansion> expansions = expand(term);
+                if (expansions.isEmpty() && term.optional()) {
+                    continue; // "yoga i": stop words aren't indexed, don't let the "i" fail the query
+                }
+                if (expansions.isEmpty()) {
+                    return new EventSearchResultDTO(query, getName(), 0, List.of());
+                }
+                expandedTerms.add(expansions);
+            }
+            if (expandedTerms.isEmpty()) {
+                return new EventSearchResultDTO(query, getName(), 0, List.of());
+            }
+            // The rarest term picks the candidates, the others are only looked up for those
+            expandedTerms.sort(Comparator.comparingInt(EventSearchIndex::matchCount));
+            Map<Doc, Float> scores = new HashMap<>();
+            for (Expansion expansion : expandedTerms.get(0)) {
+                expansion.matches().forEachValue(doc -> scores.merge(doc, expansion.score(doc), Math::max));
+            }
+            for (List<Expansion> expansions : expandedTerms.subList(1, expandedTerms.size())) {
+                Iterator<Map.Entry<Doc, Float>> candidates = scores.entrySet().iterator();
+                while (candidates.hasNext()) {
+                    Map.Entry<Doc, Float> candidate = candidates.next();
+                    float best = 0;
+                    for (Expansion expansion : expansions) {
+                        if (expansion.matches().get(candidate.getKey().event().getEventId()) != null) {
+                            best = Math.max(best, expansion.score(candidate.getKey()));
+                        }
+                    }
+                    if (best == 0) {
+                        candidates.remove();
+                    } else {
+                        candidate.setValue(candidate.getValue() + best);
+                    }
+                }
+            }
+            return new EventSearchResultDTO(query, getName(), scores.size(), top(scores, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Called with the read lock held: the index terms a query term matches, with their idf and prefix factor
+    private List<Expansion> expand(DanishAnalyzer.QueryTerm term) {
+        List<Expansion> expansions = new ArrayList<>();
+        String text = term.text();
+        if (!term.prefix() || text.length() < MIN_PREFIX_LENGTH) {
+            IntObjectMap<Doc> matches = postings.get(text);
+            if (matches != null) {
+                expansions.add(new Expansion(text, matches, idf(matches)));
+            }
+            return expansions;
+        }
+        // A rare completion shouldn't outscore the word itself just because it is rare
+        IntObjectMap<Doc> exact = postings.get(text);
+        float maxIdf = exact != null ? idf(exact) : Float.MAX_VALUE;
+        for (Map.Entry<String, IntObjectMap<Doc>> entry : postings.subMap(text, true, text + Character.MAX_VALUE, false).entrySet()) {
+            float factor = entry.getKey().equals(text) ? 1 : PREFIX_FACTOR;
+            expansions.add(new Expansion(entry.getKey(), entry.getValue(), Math.min(idf(entry.getValue()), maxIdf) * factor));
+        }
+        return expansions;
+    }
+
+    private float idf(IntObjectMap<Doc> matches) {
+        return (float) Math.log(1 + (double) docs.size() / matches.size());
+    }
+
+    private static int matchCount(List<Expansion> expansions) {
+        int count = 0;
+        for (Expansion expansion : expansions) {
+            count += expansion.matches().size();
+        }
+        return count;
+    }
+
+    // Best first, ties to the lower id. A heap of 'limit' entries instead of sorting every match.
+    private static List<EventDTO> top(Map<Doc, Float> scores, int limit) {
+        Comparator<Map.Entry<Doc, Float>> worstFirst = Map.Entry.<Doc, Float>comparingByValue()
+                .thenComparing(Comparator.comparingInt((Map.Entry<Doc, Float> entry) -> entry.getKey().event().getEventId()).reversed());
+        PriorityQueue<Map.Entry<Doc, Float>> best = new PriorityQueue<>(worstFirst);
+        for (Map.Entry<Doc, Float> entry : scores.entrySet()) {
+            if (best.size() < limit) {
+                best.add(entry);
+            } else if (worstFirst.compare(entry, best.peek()) > 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+        EventDTO[] events = new EventDTO[best.size()];
+        for (int i = events.length - 1; i >= 0; i--) {
+            events[i] = best.poll().getKey().event();
+        }
+        return Arrays.asList(events);
+    }
+
+    // weightFactor: idf, times PREFIX_FACTOR for a prefix expansion
+    private record Expansion(String term, IntObjectMap<Doc> matches, float weightFactor) {
+        float score(Doc doc) {
+            return weightFactor * doc.weights().get(term);
+        }
+    }
+
+    // Called with the write lock held
+    private void add(EventDTO event) {
+        Map<String, Float> weights = new HashMap<>();
+        addField(weights, event.getTitle(), TITLE_BOOST);
+        addField(weights, event.getInstructor(), INSTRUCTOR_BOOST);
+        addField(weights, event.getDescription(), DESCRIPTION_BOOST);
+        Doc doc = new Doc(event, weights);
+        docs.put(event.getEventId(), doc);
+        for (String term : weights.keySet()) {
+            postings.computeIfAbsent(term, t -> new IntObjectMap<>(4)).put(event.getEventId(), doc);
+        }
+    }
+
+    private static void addField(Map<String, Float> weights, String text, float boost) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : DanishAnalyzer.terms(text)) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        frequencies.forEach((term, tf) -> weights.merge(term, boost * (1 + (float) Math.log(tf)), Float::sum));
+    }
+
+    // Called with the write lock held
+    private void remove(int eventId) {
+        Doc doc = docs.remove(eventId);
+        if (doc == null) {
+            return;
+        }
+        for (String term : doc.weights().keySet()) {
+            IntObjectMap<Doc> matches = postings.get(term);
+            matches.remove(eventId);
+            if (matches.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package app.search;
+
+import app.dao.EventDAO;
+import app.dao.SearchHits;
+import app.dto.EventDTO;
+import app.dto.EventSearchResultDTO;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/*
+
+Search in Postgres (tsvector column + GIN index, see EventDAO.createSearchIndex) for catalogues that
+shouldn't live in memory. Postgres does its own Danish stemming and stop words, so it gets the plain
+lower-cased words, not folded: the generated column isn't either, so "Aarhus" has to stay "aarhus".
+Same query semantics as the in-memory index: all words must match, the last as a prefix.
+
+*/
+class PostgresEventSearch implements SearchBackend {
+    private final EventDAO eventDAO;
+
+    PostgresEventSearch(EventDAO eventDAO) {
+        this.eventDAO = eventDAO;
+        eventDAO.createSearchIndex();
+    }
+
+    @Override
+    public String getName() {
+        return "postgres";
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public EventSearchResultDTO search(String query, int limit) {
+        List<String> words = DanishAnalyzer.plainWords(query);
+        if (words.isEmpty()) {
+            return new EventSearchResultDTO(query, getName(), 0, List.of());
+        }
+        boolean lastIsPrefix = Character.isLetterOrDigit(query.charAt(query.length() - 1));
+        // Only letters and digits get here, nothing that means something in tsquery syntax
+        StringJoiner tsquery = new StringJoiner(" & ");
+        for (int i = 0; i < words.size(); i++) {
+            boolean prefix = lastIsPrefix && i == words.size() - 1;
+            tsquery.add(prefix ? words.get(i) + ":*" : words.get(i));
+        }
+        SearchHits hits = eventDAO.searchEventIds(tsquery.toString(), limit);
+
+        Map<Integer, Integer> rank = new HashMap<>();
+        for (int i = 0; i < hits.eventIds().size(); i++) {
+            rank.put(hits.eventIds().get(i), i);
+        }
+        List<EventDTO> events = eventDAO.getEventsByIds(hits.eventIds(), EventDTO::new).stream()
+                .sorted(Comparator.comparingInt(event -> rank.get(event.getEventId())))
+                .toList();
+        return new EventSearchResultDTO(query, getName(), hits.total(), events);
+    }
+}
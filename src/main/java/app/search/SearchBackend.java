@@ -0,0 +1,13 @@
+package app.search;
+
+import app.dto.EventSearchResultDTO;
+
+// Where EventSearch sends the queries: the in-process index or Postgres
+interface SearchBackend {
+    String getName();
+
+    // False while the backend can't answer yet (the in-memory index before its first load)
+    boolean isReady();
+
+    EventSearchResultDTO search(String query, int limit);
+}
@@ -0,0 +1,210 @@
+package app.security;
+
+import app.dto.PasswordHasherStatsDTO;
+import app.exceptions.ApiException;
+import org.mindrot.jbcrypt.BCrypt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+
+All BCrypt work runs here, on a small pool of its own, so a burst of logins or registrations can only
+use PASSWORD_HASH_THREADS cores. The calling request thread waits for its job, so the wait is kept
+short: up to PASSWORD_HASH_QUEUE jobs (default 8 per thread) wait for a worker, and past that, or when
+a job takes longer than PASSWORD_HASH_TIMEOUT_MS, the request fails fast with a 503. The default timeout
+is what a full queue takes to drain: one hash times (queue / threads + 1).
+
+The work factor is BCRYPT_COST, or when that is not set the highest cost (10-14) that hashes within
+BCRYPT_TARGET_MS on this machine, measured once at startup. Hashes made with a lower cost are replaced
+on the user's next successful login (see needsRehash).
+
+*/
+public class PasswordHasher {
+    private static final Logger log = LoggerFactory.getLogger(PasswordHasher.class);
+    private static final int MIN_COST = 10; // BCrypt.gensalt()'s default, never go below it
+    private static final int MAX_COST = 14;
+    private static final long MIN_TIMEOUT_MS = 100;
+    private static PasswordHasher instance;
+
+    private final ThreadPoolExecutor executor;
+    private volatile ForkJoinPool bulkPool; // created on the first bulk import
+    private final long timeoutMs;
+    private final int cost;
+
+    private final LongAdder hashed = new LongAdder();
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+
+    private PasswordHasher(int threads, int queueSize, long timeoutMs, int cost) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMs = timeoutMs;
+        this.cost = cost;
+    }
+
+    public static synchronized PasswordHasher getInstance() {
+        if (instance == null) {
+            int threads = getEnvInt("PASSWORD_HASH_THREADS", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            int queueSize = getEnvInt("PASSWORD_HASH_QUEUE", threads * 8);
+            String cost = System.getenv("BCRYPT_COST");
+            Calibration calibration = cost != null ? measure(Integer.parseInt(cost)) : calibrate(getEnvInt("BCRYPT_TARGET_MS", 250));
+            long defaultTimeoutMs = Math.max(MIN_TIMEOUT_MS, calibration.hashMs() * (queueSize / threads + 1));
+            long timeoutMs = getEnvInt("PASSWORD_HASH_TIMEOUT_MS", (int) Math.min(defaultTimeoutMs, Integer.MAX_VALUE));
+            instance = new PasswordHasher(threads, queueSize, timeoutMs, calibration.cost());
+            log.info("Password hashing: cost {} ({} ms), {} threads, queue {}, timeout {} ms",
+                    instance.cost, calibration.hashMs(), threads, queueSize, timeoutMs);
+        }
+        return instance;
+    }
+
+    public String hash(String password) {
+        String hash = run(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+        hashed.increment();
+        return hash;
+    }
+
+    // Bulk provisioning: every password is its own task on a fork-join pool with a worker per core
+    // (PASSWORD_BULK_THREADS). It is not the login pool, so an import never fills the queue logins wait in,
+    // they only share the CPU. The hashes come back in the order of the passwords.
+    public List<String> hashAll(List<String> passwords) {
+        ForkJoinPool pool = getBulkPool();
+        List<ForkJoinTask<String>> tasks = new ArrayList<>(passwords.size());
+        for (String password : passwords) {
+            tasks.add(pool.submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost))));
+        }
+        List<String> hashes = new ArrayList<>(passwords.size());
+        for (ForkJoinTask<String> task : tasks) {
+            hashes.add(task.join());
+        }
+        hashed.add(hashes.size());
+        return hashes;
+    }
+
+    private ForkJoinPool getBulkPool() {
+        ForkJoinPool pool = bulkPool;
+        if (pool == null) {
+            synchronized (this) {
+                if (bulkPool == null) {
+                    int threads = getEnvInt("PASSWORD_BULK_THREADS", Runtime.getRuntime().availableProcessors());
+                    bulkPool = new ForkJoinPool(threads, forkJoinPool -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                        thread.setName("password-bulk-hasher-" + thread.getPoolIndex());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, null, false);
+                }
+                pool = bulkPool;
+            }
+        }
+        return pool;
+    }
+
+    public boolean verify(String password, String hash) {
+        boolean matches = run(() -> BCrypt.checkpw(password, hash));
+        verified.increment();
+        return matches;
+    }
+
+    // True for hashes made with a lower cost than the current one, the caller should store hash(password) instead
+    public boolean needsRehash(String hash) {
+        // $2a$10$<salt+hash>
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6)) < cost;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public void countRehash() {
+        rehashed.increment();
+    }
+
+    private <T> T run(Callable<T> job) {
+        Future<T> future;
+        try {
+            future = executor.submit(job);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ApiException(503, "Too many logins right now, please try again");
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.increment();
+            throw new ApiException(503, "Too many logins right now, please try again");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ApiException(503, "Interrupted while hashing the password");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private record Calibration(int cost, long hashMs) {
+    }
+
+    // Highest cost whose hash time stays under targetMs. Every step up doubles the time, so we stop
+    // as soon as the next step would go over.
+    private static Calibration calibrate(int targetMs) {
+        Calibration calibration = measure(MIN_COST);
+        while (calibration.cost() < MAX_COST && calibration.hashMs() * 2 <= targetMs) {
+            calibration = measure(calibration.cost() + 1);
+        }
+        return calibration;
+    }
+
+    private static Calibration measure(int cost) {
+        long start = System.nanoTime();
+        BCrypt.hashpw("calibration", BCrypt.gensalt(cost));
+        return new Calibration(cost, Math.max(1, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    public PasswordHasherStatsDTO getStats() {
+        return new PasswordHasherStatsDTO(
+                cost,
+                executor.getMaximumPoolSize(),
+                executor.getActiveCount(),
+                executor.getQueue().size(),
+                executor.getQueue().size() + executor.getQueue().remainingCapacity(),
+                hashed.sum(),
+                verified.sum(),
+                rehashed.sum(),
+                rejected.sum(),
+                timedOut.sum());
+    }
+
+    private static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
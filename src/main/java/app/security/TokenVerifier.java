@@ -0,0 +1,179 @@
+package app.security;
+
+import app.dto.TokenCacheStatsDTO;
+import app.dto.UserDTO;
+import app.exceptions.NotAuthorizedException;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/*
+
+Verifies bearer tokens for SecurityController.authenticate(). A token is parsed once, its HMAC is checked
+with one shared MACVerifier and the claims are read once. The resulting user is cached under the SHA-256
+of the token until the token expires, so the same token on the next request costs a hash and a map lookup
+instead of an HMAC and a JSON parse. The raw token is never stored.
+
+The cache holds at most TOKEN_CACHE_MAX_SIZE tokens (env, default 10000). When it is full, expired entries
+are dropped first and then a slice of the rest.
+
+*/
+public class TokenVerifier {
+    private static final String DEV_SECRET_KEY = "DetteErEnHemmeligNøgleTilAtDanneJWT_Tokensmed";
+    private static final int MAX_SIZE = getEnvInt("TOKEN_CACHE_MAX_SIZE", 10000);
+    private static TokenVerifier instance;
+
+    private final MACVerifier verifier;
+    private final ConcurrentHashMap<String, VerifiedToken> cache = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder verifyNanos = new LongAdder(); // time spent on misses, hits are not worth timing
+    private final AtomicLong maxVerifyNanos = new AtomicLong();
+
+    private TokenVerifier(String secret) {
+        try {
+            verifier = new MACVerifier(secret);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("SECRET_KEY can not be used for HS256", e);
+        }
+    }
+
+    public static synchronized TokenVerifier getInstance() {
+        if (instance == null) {
+            instance = new TokenVerifier(getSecretKey());
+        }
+        return instance;
+    }
+
+    public static String getSecretKey() {
+        return System.getenv("DEPLOYED") != null ? System.getenv("SECRET_KEY") : DEV_SECRET_KEY;
+    }
+
+    public UserDTO verify(String token) throws NotAuthorizedException {
+        String key = hash(token);
+        long now = System.currentTimeMillis();
+        VerifiedToken cached = cache.get(key);
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                hits.increment();
+                return cached.user;
+            }
+            cache.remove(key, cached);
+        }
+
+        misses.increment();
+        long start = System.nanoTime();
+        try {
+            VerifiedToken verified = parseAndVerify(token, now);
+            if (cache.size() >= MAX_SIZE) {
+                makeRoom(now);
+            }
+            cache.put(key, verified);
+            return verified.user;
+        } catch (NotAuthorizedException e) {
+            rejected.increment();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            verifyNanos.add(elapsed);
+            maxVerifyNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    // The full parse + HMAC path without the cache, for the benchmarks
+    public UserDTO verifyUncached(String token) throws NotAuthorizedException {
+        return parseAndVerify(token, System.currentTimeMillis()).user;
+    }
+
+    private VerifiedToken parseAndVerify(String token, long now) throws NotAuthorizedException {
+        try {
+            SignedJWT jwt = SignedJWT.parse(token);
+            // Only accept what we sign ourselves, never let the token pick its algorithm
+            if (!JWSAlgorithm.HS256.equals(jwt.getHeader().getAlgorithm()) || !jwt.verify(verifier)) {
+                throw new NotAuthorizedException(403, "Token is not valid");
+            }
+            JWTClaimsSet claims = jwt.getJWTClaimsSet();
+            Date expirationTime = claims.getExpirationTime();
+            if (expirationTime == null || expirationTime.getTime() <= now) {
+                throw new NotAuthorizedException(403, "Token has expired");
+            }
+            String name = claims.getSubject() != null ? claims.getSubject() : claims.getStringClaim("name");
+            if (name == null) {
+                throw new NotAuthorizedException(403, "Token has no user");
+            }
+            String roles = claims.getStringClaim("roles");
+            Set<String> roleSet = roles == null ? Set.of() : Arrays.stream(roles.split(","))
+                    .map(String::trim)
+                    .filter(role -> !role.isEmpty())
+                    .collect(Collectors.toUnmodifiableSet());
+            return new VerifiedToken(new UserDTO(name, roleSet), expirationTime.getTime());
+        } catch (ParseException | JOSEException e) {
+            throw new NotAuthorizedException(403, "Token is not valid", e);
+        }
+    }
+
+    private void makeRoom(long now) {
+        int before = cache.size();
+        cache.values().removeIf(entry -> entry.expiresAt <= now);
+        // Still full of live tokens: drop about a tenth, they are simply verified again on their next request
+        Iterator<String> keys = cache.keySet().iterator();
+        int toDrop = cache.size() - MAX_SIZE + Math.max(MAX_SIZE / 10, 1);
+        while (toDrop-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        evicted.add(Math.max(before - cache.size(), 0));
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM ships SHA-256
+        }
+    }
+
+    public TokenCacheStatsDTO getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        return new TokenCacheStatsDTO(
+                cache.size(),
+                MAX_SIZE,
+                hitCount,
+                missCount,
+                lookups == 0 ? 0 : (double) hitCount / lookups,
+                rejected.sum(),
+                evicted.sum(),
+                missCount == 0 ? 0 : verifyNanos.sum() / missCount / 1000,
+                maxVerifyNanos.get() / 1000);
+    }
+
+    private static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private record VerifiedToken(UserDTO user, long expiresAt) {
+    }
+}
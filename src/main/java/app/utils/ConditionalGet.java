@@ -0,0 +1,63 @@
+package app.utils;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+
+/*
+
+Conditional GET for the catalogue endpoints. The ETag is the event catalogue version from EventDAO, which
+is bumped after every committed create/update/delete, so a client that sends it back in If-None-Match gets
+a 304 without the request ever opening a database session.
+
+The tag starts with the server's boot time, otherwise a restart (version back at 0) could hand out a tag
+that an old, different response was stored under. It is a weak tag because the same JSON goes out gzip'ed,
+brotli'ed or plain depending on Accept-Encoding.
+
+Read the version BEFORE querying. If an update lands in between, the client stores new data under the old
+tag and simply gets a full response on the next poll, never the other way around.
+
+*/
+public class ConditionalGet {
+    private static final String BOOT_ID = Long.toString(System.currentTimeMillis(), 36);
+
+    public static String etag(long version) {
+        return "W/\"" + BOOT_ID + "-" + version + "\"";
+    }
+
+    // Answers 304 and returns true when the client already has this version
+    public static boolean notModified(Context ctx, String etag) {
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null || !matches(ifNoneMatch, etag)) {
+            return false;
+        }
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "no-cache");
+        ctx.status(HttpStatus.NOT_MODIFIED);
+        return true;
+    }
+
+    // Call right before writing a successful response, error responses shouldn't carry a tag
+    public static void tag(Context ctx, String etag) {
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "no-cache"); // may be stored, but has to be revalidated every time
+    }
+
+    // If-None-Match is a comma separated list (or *), compared weakly as the spec says for this header
+    private static boolean matches(String ifNoneMatch, String etag) {
+        String opaque = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*")) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package app.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.json.JavalinJackson;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/*
+
+Writes a JSON array straight to the response while the rows are still being read, instead of building
+a list first and calling ctx.json(). Memory stays flat whatever the row count and the first rows go out
+before the query has finished.
+
+readRows() is the other direction, for bulk uploads: the request body is parsed one row at a time.
+
+*/
+public class JsonStreaming {
+    // Same mapper as ctx.json(), so streamed and non-streamed responses look the same
+    private static final ObjectMapper MAPPER = JavalinJackson.defaultMapper();
+    private static final int FLUSH_EVERY_ROWS = 100;
+    private static final String STARTED = "jsonStreaming.started";
+
+    public interface RowSource<T> {
+        void forEach(Consumer<T> consumer);
+    }
+
+    // Rows are numbered from 1: the element in an array, the line in NDJSON
+    public interface RowReader {
+        void row(int rowNumber, JsonNode row);
+
+        void malformed(int rowNumber, String message);
+    }
+
+    public static boolean isNdjson(Context ctx) {
+        String contentType = ctx.contentType();
+        return contentType != null && (contentType.contains("ndjson") || contentType.contains("jsonlines"));
+    }
+
+    // A JSON array (or whitespace separated documents), or NDJSON when the content type says so. An NDJSON
+    // line that doesn't parse is reported and skipped. In an array there is no telling where the next row
+    // starts after a syntax error, so that throws, after the rows before it were handed over.
+    public static void readRows(Context ctx, RowReader reader) throws IOException {
+        InputStream body = ctx.bodyInputStream(); // not ctx.body(), which reads everything (and stops at maxRequestSize)
+        if (isNdjson(ctx)) {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            int lineNumber = 0;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode row;
+                try {
+                    row = MAPPER.readTree(line);
+                } catch (JsonProcessingException e) {
+                    reader.malformed(lineNumber, e.getOriginalMessage());
+                    continue;
+                }
+                reader.row(lineNumber, row);
+            }
+            return;
+        }
+        try (MappingIterator<JsonNode> rows = MAPPER.readerFor(JsonNode.class).readValues(body)) {
+            int rowNumber = 0;
+            while (rows.hasNextValue()) { // an array at the root is read element by element
+                reader.row(++rowNumber, rows.nextValue());
+            }
+        }
+    }
+
+    public static ObjectMapper getMapper() {
+        return MAPPER;
+    }
+
+    // True once writeArray() has written to the response: an error after that can't become a JSON error body
+    public static boolean hasStarted(Context ctx) {
+        return ctx.attribute(STARTED) != null;
+    }
+
+    public static <T> void writeArray(Context ctx, RowSource<T> source) throws IOException {
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        ctx.attribute(STARTED, true);
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(ctx.outputStream())) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET); // Javalin closes the response
+            // A failed export must not end in a well-formed (but short) array, the client has to see it broke
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.writeStartArray();
+            int[] rows = {0};
+            source.forEach(row -> {
+                try {
+                    generator.writeObject(row);
+                    if (++rows[0] % FLUSH_EVERY_ROWS == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        }
+    }
+}
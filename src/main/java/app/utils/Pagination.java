@@ -0,0 +1,122 @@
+package app.utils;
+
+import app.dao.EventStart;
+import app.dto.PageDTO;
+import app.exceptions.ValidationException;
+import io.javalin.http.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/*
+
+Keyset (cursor) pagination for the list endpoints. A page is asked for with ?limit=n and continued with
+?cursor=<next from the previous page>. The cursor is the last id of the previous page, base64 encoded so
+clients treat it as opaque. The DAOs read limit + 1 rows so we know if there is a next page without a COUNT.
+
+Lists in start time order (upcoming, between) use a time cursor instead: the start and id of the last event.
+
+*/
+public class Pagination {
+    public static final int DEFAULT_PAGE_SIZE = getEnvInt("PAGE_SIZE_DEFAULT", 50);
+    public static final int MAX_PAGE_SIZE = getEnvInt("PAGE_SIZE_MAX", 500);
+    private static final String CURSOR_PREFIX = "id:";
+    private static final String TIME_CURSOR_PREFIX = "at:";
+
+    public static boolean isRequested(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("cursor") != null;
+    }
+
+    public static int getLimit(Context ctx) {
+        String limit = ctx.queryParam("limit");
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        int value = Integer.parseInt(limit);
+        if (value < 1) {
+            throw new ValidationException("limit must be at least 1");
+        }
+        return Math.min(value, MAX_PAGE_SIZE);
+    }
+
+    // The id to continue after, 0 for the first page
+    public static int getAfterId(Context ctx) {
+        String cursor = ctx.queryParam("cursor");
+        return cursor == null || cursor.isBlank() ? 0 : decodeCursor(cursor);
+    }
+
+    public static String encodeCursor(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static int decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(CURSOR_PREFIX)) {
+                throw new ValidationException("Invalid cursor");
+            }
+            return Integer.parseInt(decoded.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid cursor");
+        }
+    }
+
+    // The event to continue after in start time order, null for the first page
+    public static EventStart getAfterStart(Context ctx) {
+        String cursor = ctx.queryParam("cursor");
+        return cursor == null || cursor.isBlank() ? null : decodeTimeCursor(cursor);
+    }
+
+    public static String encodeTimeCursor(EventStart last) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((TIME_CURSOR_PREFIX + last.start() + "/" + last.eventId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static EventStart decodeTimeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int slash = decoded.lastIndexOf('/');
+            if (!decoded.startsWith(TIME_CURSOR_PREFIX) || slash < 0) {
+                throw new ValidationException("Invalid cursor");
+            }
+            return new EventStart(LocalDateTime.parse(decoded.substring(TIME_CURSOR_PREFIX.length(), slash)),
+                    Integer.parseInt(decoded.substring(slash + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ValidationException("Invalid cursor");
+        }
+    }
+
+    // rows must have been read with limit + 1
+    public static <E, T> PageDTO<T> toPage(List<E> rows, int limit, ToIntFunction<E> idOf, Function<E, T> mapper) {
+        boolean hasNext = rows.size() > limit;
+        List<E> pageRows = hasNext ? rows.subList(0, limit) : rows;
+        String next = hasNext ? encodeCursor(idOf.applyAsInt(pageRows.get(pageRows.size() - 1))) : null;
+        List<T> items = pageRows.stream()
+                .map(mapper)
+                .collect(Collectors.toList());
+        return new PageDTO<>(items, next, limit);
+    }
+
+    // Same as toPage for lists in start time order
+    public static <E, T> PageDTO<T> toTimePage(List<E> rows, int limit, Function<E, EventStart> startOf, Function<E, T> mapper) {
+        boolean hasNext = rows.size() > limit;
+        List<E> pageRows = hasNext ? rows.subList(0, limit) : rows;
+        String next = hasNext ? encodeTimeCursor(startOf.apply(pageRows.get(pageRows.size() - 1))) : null;
+        List<T> items = pageRows.stream()
+                .map(mapper)
+                .collect(Collectors.toList());
+        return new PageDTO<>(items, next, limit);
+    }
+
+    private static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
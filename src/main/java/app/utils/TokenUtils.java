@@ -5,10 +5,13 @@ import app.exceptions.ApiException;
 import com.nimbusds.jose.*;
 import com.nimbusds.jose.crypto.MACSigner;
 import com.nimbusds.jwt.JWTClaimsSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Date;
 
 public class TokenUtils {
+    private static final Logger log = LoggerFactory.getLogger(TokenUtils.class);
 
     public String createToken(UserDTO user, String ISSUER, String TOKEN_EXPIRE_TIME, String SECRET_KEY){
         // https://codecurated.com/blog/introduction-to-jwt-jws-jwe-jwa-jwk/
@@ -29,7 +32,7 @@ public class TokenUtils {
             return jwsObject.serialize();
 
         } catch (JOSEException e) {
-            e.printStackTrace();
+            log.error("Could not sign token", e);
             throw new ApiException(500, "Could not create token");
         }
     }
@@ -0,0 +1,37 @@
+package app.catalogue;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogueSnapshotTest {
+
+    @Test
+    void gzipWhenOffered() {
+        assertTrue(CatalogueSnapshot.acceptsGzip("gzip"));
+        assertTrue(CatalogueSnapshot.acceptsGzip("deflate, gzip;q=0.5, br"));
+        assertTrue(CatalogueSnapshot.acceptsGzip("GZIP ; Q=1.0"));
+        assertTrue(CatalogueSnapshot.acceptsGzip("*"));
+        assertTrue(CatalogueSnapshot.acceptsGzip("br, *;q=0.1"));
+    }
+
+    @Test
+    void noGzipWhenRefusedOrMissing() {
+        assertFalse(CatalogueSnapshot.acceptsGzip(null));
+        assertFalse(CatalogueSnapshot.acceptsGzip(""));
+        assertFalse(CatalogueSnapshot.acceptsGzip("identity"));
+        assertFalse(CatalogueSnapshot.acceptsGzip("br, deflate"));
+        assertFalse(CatalogueSnapshot.acceptsGzip("gzip;q=0"));
+        assertFalse(CatalogueSnapshot.acceptsGzip("gzip;q=0.000"));
+        assertFalse(CatalogueSnapshot.acceptsGzip("gzip;q=nonsense"));
+    }
+
+    // An explicit gzip entry wins over "*", whichever comes first
+    @Test
+    void explicitGzipWinsOverWildcard() {
+        assertTrue(CatalogueSnapshot.acceptsGzip("*;q=0, gzip"));
+        assertFalse(CatalogueSnapshot.acceptsGzip("*, gzip;q=0"));
+        assertFalse(CatalogueSnapshot.acceptsGzip("gzip;q=0, *"));
+    }
+}
@@ -0,0 +1,179 @@
+package app.catalogue;
+
+import app.dto.EventDTO;
+import app.dto.FacetCountDTO;
+import app.dto.FacetedPageDTO;
+import app.model.Category;
+import app.model.Location;
+import app.utils.Pagination;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacetIndexTest {
+    private static final Category YOGA = new Category(1, "Yoga");
+    private static final Category SALSA = new Category(2, "Salsa");
+
+    private FacetIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FacetIndex();
+        index.loaded(List.of(
+                event(1, YOGA, Location.Aarhus, "ACTIVE", "2024-05-10"),
+                event(2, YOGA, Location.Odense, "ACTIVE", "2024-05-11"),
+                event(3, YOGA, Location.Aarhus, "CANCELLED", "2024-06-01"),
+                event(4, SALSA, Location.Aarhus, "ACTIVE", "2024-05-20"),
+                event(5, SALSA, Location.Aalborg, "ACTIVE", "2024-06-02"),
+                event(6, SALSA, Location.Odense, "ACTIVE", "2024-06-03"),
+                event(7, null, Location.Aarhus, "ACTIVE", "2024-07-01"),
+                event(8, YOGA, Location.København, "ACTIVE", "2024-07-02")));
+    }
+
+    @Test
+    void noFilterMatchesEverything() {
+        FacetedPageDTO<EventDTO> page = index.filter(new FacetFilter(), 0, 100);
+        assertEquals(8, page.getTotal());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), ids(page));
+        assertNull(page.getNext());
+    }
+
+    @Test
+    void valuesOfOneDimensionAreOred() {
+        FacetFilter filter = new FacetFilter();
+        filter.getLocations().addAll(Set.of(Location.Aarhus, Location.Odense));
+        assertEquals(List.of(1, 2, 3, 4, 6, 7), ids(index.filter(filter, 0, 100)));
+    }
+
+    @Test
+    void dimensionsAreAnded() {
+        FacetFilter filter = new FacetFilter();
+        filter.getCategoryIds().add(1);
+        filter.getLocations().add(Location.Aarhus);
+        assertEquals(List.of(1, 3), ids(index.filter(filter, 0, 100)));
+
+        filter.getStatuses().add("ACTIVE");
+        filter.getMonths().add(YearMonth.of(2024, 5));
+        FacetedPageDTO<EventDTO> page = index.filter(filter, 0, 100);
+        assertEquals(List.of(1), ids(page));
+        assertEquals(1, page.getTotal());
+    }
+
+    // Each dimension's counts apply the other dimensions' filters, not its own
+    @Test
+    void countsLeaveOutTheirOwnDimension() {
+        FacetFilter filter = new FacetFilter();
+        filter.getCategoryIds().add(1);
+        filter.getLocations().add(Location.Aarhus);
+        FacetedPageDTO<EventDTO> page = index.filter(filter, 0, 100);
+
+        // Yoga only: 1 and 3 in Aarhus, 2 in Odense, 8 in København
+        assertEquals(Map.of("København", 1, "Aarhus", 2, "Odense", 1), counts(page, "location"));
+        // Aarhus only: 1 and 3 are yoga, 4 salsa, 7 has no category
+        assertEquals(Map.of("1", 2, "2", 1), counts(page, "category"));
+        // Yoga in Aarhus
+        assertEquals(Map.of("ACTIVE", 1, "CANCELLED", 1), counts(page, "status"));
+        assertEquals(Map.of("2024-05", 1, "2024-06", 1), counts(page, "month"));
+
+        assertEquals(Set.of("Aarhus"), selected(page, "location"));
+        assertEquals(Set.of("1"), selected(page, "category"));
+        assertEquals("Yoga", page.getFacets().get("category").get(0).getLabel());
+    }
+
+    @Test
+    void pickedValueWithoutEventsIsStillListed() {
+        FacetFilter filter = new FacetFilter();
+        filter.getMonths().add(YearMonth.of(2025, 1));
+        FacetedPageDTO<EventDTO> page = index.filter(filter, 0, 100);
+        assertEquals(0, page.getTotal());
+        // The other months keep their counts, the month filter doesn't apply to its own counts
+        assertEquals(Map.of("2024-05", 3, "2024-06", 3, "2024-07", 2, "2025-01", 0), counts(page, "month"));
+        assertEquals(Set.of("2025-01"), selected(page, "month"));
+        assertEquals(List.of(), ids(page));
+    }
+
+    @Test
+    void changedEventsMoveBetweenValues() {
+        index.changed(List.of(event(1, SALSA, Location.Odense, "ACTIVE", "2024-05-10")), Set.of(3));
+        FacetedPageDTO<EventDTO> page = index.filter(new FacetFilter(), 0, 100);
+        assertEquals(7, page.getTotal());
+        assertEquals(Map.of("København", 1, "Aarhus", 2, "Odense", 3, "Aalborg", 1), counts(page, "location"));
+        assertEquals(Map.of("1", 2, "2", 4), counts(page, "category"));
+        // A value nobody has any more disappears
+        assertEquals(Map.of("ACTIVE", 7), counts(page, "status"));
+    }
+
+    // The cursor is an id, so a page boundary survives changes: nothing before it shows up again and
+    // nothing after it that still matches is skipped
+    @Test
+    void cursorPagingAcrossChanges() {
+        FacetFilter filter = new FacetFilter();
+        filter.getLocations().add(Location.Aarhus);
+        FacetedPageDTO<EventDTO> first = index.filter(filter, 0, 2);
+        assertEquals(List.of(1, 3), ids(first));
+        assertEquals(4, first.getTotal());
+
+        index.changed(List.of(
+                event(2, YOGA, Location.Aarhus, "ACTIVE", "2024-05-11"), // moved in, but before the cursor
+                event(6, SALSA, Location.Aarhus, "ACTIVE", "2024-06-03"), // moved in after the cursor
+                event(9, YOGA, Location.Aarhus, "ACTIVE", "2024-08-01")), // new
+                Set.of(4));
+
+        List<Integer> rest = new ArrayList<>();
+        String next = first.getNext();
+        while (next != null) {
+            FacetedPageDTO<EventDTO> page = index.filter(filter, Pagination.decodeCursor(next), 2);
+            rest.addAll(ids(page));
+            next = page.getNext();
+        }
+        assertEquals(List.of(6, 7, 9), rest);
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        FacetedPageDTO<EventDTO> page = index.filter(new FacetFilter(), 6, 2);
+        assertEquals(List.of(7, 8), ids(page));
+        assertNull(page.getNext());
+        assertTrue(index.isReady());
+    }
+
+    private static List<Integer> ids(FacetedPageDTO<EventDTO> page) {
+        return page.getItems().stream().map(EventDTO::getEventId).toList();
+    }
+
+    private static Map<String, Integer> counts(FacetedPageDTO<EventDTO> page, String facet) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (FacetCountDTO count : page.getFacets().get(facet)) {
+            if (count.getCount() > 0 || count.isSelected()) {
+                counts.put(count.getValue(), count.getCount());
+            }
+        }
+        return counts;
+    }
+
+    private static Set<String> selected(FacetedPageDTO<EventDTO> page, String facet) {
+        return Set.copyOf(page.getFacets().get(facet).stream().filter(FacetCountDTO::isSelected).map(FacetCountDTO::getValue).toList());
+    }
+
+    private static EventDTO event(int id, Category category, Location location, String status, String date) {
+        EventDTO event = new EventDTO();
+        event.setEventId(id);
+        event.setTitle("Event " + id);
+        event.setCategory(category);
+        event.setLocation(location);
+        event.setStatus(status);
+        event.setDate(LocalDate.parse(date));
+        return event;
+    }
+}
@@ -0,0 +1,196 @@
+package app.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DAOTest {
+    private ItemDAO dao;
+
+    @BeforeEach
+    void setUp() {
+        dao = new ItemDAO();
+    }
+
+    @Test
+    void autoIdsGoPastExplicitIds() {
+        assertEquals(1, dao.create(new Item(0, "a")).id);
+        assertEquals(10, dao.create(new Item(10, "a")).id);
+        assertEquals(11, dao.create(new Item(0, "a")).id);
+        assertEquals(5, dao.create(new Item(5, "a")).id);
+        assertEquals(12, dao.create(new Item(0, "a")).id);
+    }
+
+    @Test
+    void createRejectsAStoredId() {
+        Item first = dao.create(new Item(3, "a"));
+        assertThrows(IllegalArgumentException.class, () -> dao.create(new Item(3, "b")));
+        assertSame(first, dao.getById(3));
+        assertEquals(List.of(first), dao.byCategory.find("a"));
+        assertEquals(List.of(), dao.byCategory.find("b"));
+    }
+
+    @Test
+    void saveReplacesAndReindexes() {
+        dao.create(new Item(3, "a"));
+        Item replacement = dao.save(new Item(3, "b"));
+        assertSame(replacement, dao.getById(3));
+        assertEquals(List.of(), dao.byCategory.find("a"));
+        assertEquals(List.of(replacement), dao.byCategory.find("b"));
+        assertEquals(4, dao.create(new Item(0, "a")).id);
+    }
+
+    @Test
+    void indexFollowsUpdatesAndDeletes() {
+        Item item = dao.create(new Item(0, "a"));
+        dao.create(new Item(0, "a"));
+        item.category = "b"; // changed in place, then update(), like with JPA
+        dao.update(item);
+        assertEquals(1, dao.byCategory.count("a"));
+        assertEquals(List.of(item), dao.byCategory.find("b"));
+
+        dao.delete(item.id);
+        assertNull(dao.getById(item.id));
+        assertEquals(0, dao.byCategory.count("b"));
+        assertEquals(1, dao.size());
+    }
+
+    @Test
+    void updateOfAMissingIdDoesNothing() {
+        dao.update(new Item(99, "a"));
+        assertNull(dao.getById(99));
+        assertEquals(0, dao.byCategory.count("a"));
+    }
+
+    @Test
+    void indexAddedLaterCoversStoredEntities() {
+        for (int i = 0; i < 50; i++) {
+            dao.create(new Item(0, i % 2 == 0 ? "even" : "odd"));
+        }
+        DAO<Item>.Index<Boolean> byLowId = dao.addIndex("lowId", item -> item.id <= 10 ? true : null);
+        assertEquals(10, byLowId.count(true));
+        assertSame(byLowId, dao.getIndex("lowId"));
+        assertEquals(25, dao.byCategory.count("even"));
+    }
+
+    // Explicit and auto ids from many threads: every create either stores its entity or throws, none is lost
+    @Test
+    void concurrentCreatesNeverReplace() throws Exception {
+        int threads = 8;
+        int perThread = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Item> stored = Collections.synchronizedList(new ArrayList<>());
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        // Odd threads pick ids the auto numbering is about to hand out
+                        int id = thread % 2 == 0 ? 0 : i * 4 + thread;
+                        try {
+                            stored.add(dao.create(new Item(id, "t" + thread)));
+                        } catch (IllegalArgumentException e) {
+                            // the id was taken, fine, it must not have replaced anything
+                        }
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(stored.size(), dao.size());
+        for (Item item : stored) {
+            assertSame(item, dao.getById(item.id));
+        }
+        // Auto ids are never refused
+        assertEquals(threads / 2 * perThread, stored.stream().filter(item -> item.category.charAt(1) % 2 == 0).count());
+    }
+
+    // One writer creates ids 1, 2, 3, ... in order (spread over every stripe) and another keeps moving items
+    // between two categories. A snapshot must hold every id below its highest one, and an index lookup only
+    // items that were stored under that key.
+    @Test
+    void readsAreSnapshotsWhileWritesHappen() throws Exception {
+        int creates = 20_000;
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> creator = pool.submit(() -> {
+                for (int i = 0; i < creates; i++) {
+                    dao.create(new Item(0, "a"));
+                }
+                done.set(true);
+            });
+            Future<?> mover = pool.submit(() -> {
+                int id = 1;
+                while (!done.get()) {
+                    Item item = dao.getById(id);
+                    if (item != null) {
+                        dao.save(new Item(id, "a".equals(item.category) ? "b" : "a"));
+                    }
+                    id = id % 500 + 1;
+                }
+            });
+            while (!done.get()) {
+                List<Item> all = dao.getAll();
+                for (int i = 0; i < all.size(); i++) {
+                    assertEquals(i + 1, all.get(i).id, "the snapshot has a gap");
+                }
+                Set<Integer> ids = new HashSet<>();
+                for (Item item : dao.byCategory.find("b")) {
+                    assertEquals("b", item.category);
+                    assertTrue(ids.add(item.id), "item " + item.id + " twice");
+                }
+            }
+            creator.get();
+            mover.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(creates, dao.getAll().size());
+        assertEquals(creates, dao.byCategory.count("a") + dao.byCategory.count("b"));
+    }
+
+    private static class Item {
+        int id;
+        String category;
+
+        Item(int id, String category) {
+            this.id = id;
+            this.category = category;
+        }
+    }
+
+    private static class ItemDAO extends DAO<Item> {
+        final Index<String> byCategory = addIndex("category", item -> item.category);
+
+        @Override
+        protected int getId(Item item) {
+            return item.id;
+        }
+
+        @Override
+        protected void setId(Item item, int id) {
+            item.id = id;
+        }
+    }
+}
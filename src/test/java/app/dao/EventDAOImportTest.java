@@ -0,0 +1,83 @@
+package app.dao;
+
+import app.config.HibernateConfig;
+import app.model.Category;
+import app.model.Event;
+import app.model.Location;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// EventDAO.createAll against a Testcontainers Postgres (needs Docker)
+class EventDAOImportTest {
+    private static EventDAO eventDAO;
+    private static Integer categoryId;
+
+    @BeforeAll
+    static void setUp() {
+        EntityManagerFactory emf = HibernateConfig.getEntityManagerFactoryForTest();
+        eventDAO = new EventDAO(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Category category = new Category(0, "Yoga");
+            em.persist(category);
+            em.getTransaction().commit();
+            categoryId = category.getCategoryId();
+        } finally {
+            em.close();
+        }
+    }
+
+    @Test
+    void cleanChunkIsImported() {
+        List<Event> chunk = List.of(event("Morning yoga"), event("Evening yoga"));
+
+        Map<Integer, String> errors = eventDAO.createAll(chunk);
+
+        assertTrue(errors.isEmpty(), errors.toString());
+        chunk.forEach(this::assertSavedWithCategory);
+    }
+
+    @Test
+    void badRowOnlyFailsItself() {
+        List<Event> chunk = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            chunk.add(event("Yoga " + i));
+        }
+        chunk.set(2, event("x".repeat(300))); // longer than the title column, fails the batch on insert
+
+        Map<Integer, String> errors = eventDAO.createAll(chunk);
+
+        assertEquals(Set.of(2), errors.keySet(), errors.toString());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i != 2) {
+                assertSavedWithCategory(chunk.get(i));
+            }
+        }
+    }
+
+    private void assertSavedWithCategory(Event event) {
+        Event saved = eventDAO.getEventById(event.getEventId());
+        assertNotNull(saved, "event " + event.getTitle() + " was not saved");
+        assertEquals(categoryId, saved.getCategory().getCategoryId());
+    }
+
+    // Like EventController's import: the category is a plain object with only the id, as read from the JSON
+    private static Event event(String title) {
+        return new Event(title, "Description", LocalDate.now().plusDays(7).atStartOfDay(), LocalTime.of(10, 0), 60, 20,
+                Location.Aarhus, "Instructor", 100, "ACTIVE", new Category(categoryId, null));
+    }
+}
@@ -0,0 +1,158 @@
+package app.dao;
+
+import app.config.HibernateConfig;
+import app.dto.EventDTO;
+import app.dto.UserDTO;
+import app.model.Category;
+import app.model.Event;
+import app.model.Location;
+import app.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static app.testutils.QueryCounts.expectStatementsAtTwoSizes;
+
+// Every EventDAO finder runs a fixed number of statements, however many events (and registrations) there are.
+// The results are mapped to DTOs inside the count, so a lazy association they touch would show up as N+1.
+class EventDAOQueryCountTest {
+    private static final int MORE_ROWS = 25;
+    private static final AtomicInteger userNumber = new AtomicInteger();
+
+    private static EntityManagerFactory emf;
+    private static EventDAO eventDAO;
+    private static Integer categoryId;
+    private static int registeredEventId;
+
+    @BeforeAll
+    static void setUp() {
+        emf = HibernateConfig.getEntityManagerFactoryForTest();
+        eventDAO = new EventDAO(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Category category = new Category(0, "Pilates");
+            em.persist(category);
+            em.getTransaction().commit();
+            categoryId = category.getCategoryId();
+        } finally {
+            em.close();
+        }
+        registeredEventId = addEvents(3).get(0);
+        addRegistrations(registeredEventId, 2);
+    }
+
+    @Test
+    void getAlleEvents() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addEvents(MORE_ROWS),
+                () -> eventDAO.getAlleEvents(EventDTO::new));
+    }
+
+    @Test
+    void getEventsByIds() {
+        List<Integer> ids = new ArrayList<>(addEvents(3));
+        expectStatementsAtTwoSizes(emf, 1, () -> ids.addAll(addEvents(MORE_ROWS)),
+                () -> eventDAO.getEventsByIds(ids, EventDTO::new));
+    }
+
+    @Test
+    void getEventById() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addEvents(MORE_ROWS),
+                () -> new EventDTO(eventDAO.getEventById(registeredEventId)));
+    }
+
+    @Test
+    void getEventsByCategory() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addEvents(MORE_ROWS),
+                () -> eventDAO.getEventsByCategory(categoryId).forEach(EventDTO::new));
+    }
+
+    @Test
+    void getEventByStatus() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addEvents(MORE_ROWS),
+                () -> eventDAO.getEventByStatus("ACTIVE").forEach(EventDTO::new));
+    }
+
+    @Test
+    void getEventsPage() {
+        EventFilter filter = new EventFilter(categoryId, "ACTIVE", Location.Aarhus, null, null);
+        expectStatementsAtTwoSizes(emf, 1, () -> addEvents(MORE_ROWS),
+                () -> eventDAO.getEventsPage(filter, 0, 1000).forEach(EventDTO::new));
+    }
+
+    @Test
+    void streamEvents() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addEvents(MORE_ROWS),
+                () -> eventDAO.streamEvents(new EventFilter(), EventDTO::new));
+    }
+
+    @Test
+    void getEventsByStart() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addEvents(MORE_ROWS),
+                () -> eventDAO.getEventsByStart(LocalDateTime.now(), null, Location.Aarhus, null, 1000).forEach(EventDTO::new));
+    }
+
+    @Test
+    void getRegistrationsForEventById() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addRegistrations(registeredEventId, MORE_ROWS),
+                () -> eventDAO.getRegistrationsForEventById(registeredEventId).forEach(UserDTO::new));
+    }
+
+    @Test
+    void getRegistrationsForEventPage() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addRegistrations(registeredEventId, MORE_ROWS),
+                () -> eventDAO.getRegistrationsForEventPage(registeredEventId, 0, 1000).forEach(UserDTO::new));
+    }
+
+    @Test
+    void streamRegistrationsForEvent() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addRegistrations(registeredEventId, MORE_ROWS),
+                () -> eventDAO.streamRegistrationsForEvent(registeredEventId, UserDTO::new));
+    }
+
+    private static List<Integer> addEvents(int count) {
+        List<Integer> ids = new ArrayList<>();
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (int i = 0; i < count; i++) {
+                LocalDate date = LocalDate.now().plusDays(1 + i % 30);
+                Event event = new Event("Pilates " + i, "Core and balance", date.atStartOfDay(), LocalTime.of(9 + i % 8, 0),
+                        60, 20, Location.Aarhus, "Instructor", 100, "ACTIVE", em.getReference(Category.class, categoryId));
+                em.persist(event);
+                ids.add(event.getEventId());
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+        return ids;
+    }
+
+    // Users are made with the no-arg constructor, the password constructors would BCrypt every one of them
+    private static void addRegistrations(int eventId, int count) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Event event = em.find(Event.class, eventId);
+            for (int i = 0; i < count; i++) {
+                User user = new User();
+                user.setName("event-test-user-" + userNumber.incrementAndGet());
+                user.setPassword("not-a-hash");
+                user.getEvents().add(event);
+                em.persist(user);
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+}
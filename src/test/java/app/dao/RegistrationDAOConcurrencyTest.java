@@ -0,0 +1,121 @@
+package app.dao;
+
+import app.config.HibernateConfig;
+import app.model.Event;
+import app.model.Location;
+import app.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Many users registering for the same small event at once (against a Testcontainers Postgres, needs Docker)
+class RegistrationDAOConcurrencyTest {
+    private static final int CAPACITY = 5;
+    private static final int USERS = 40;
+    private static final AtomicInteger userNumber = new AtomicInteger();
+
+    private static EntityManagerFactory emf;
+    private static EventDAO eventDAO;
+    private static RegistrationDAO registrationDAO;
+
+    @BeforeAll
+    static void setUp() {
+        emf = HibernateConfig.getEntityManagerFactoryForTest();
+        eventDAO = new EventDAO(emf);
+        registrationDAO = new RegistrationDAO(emf);
+    }
+
+    @Test
+    void neverOverbooked() throws Exception {
+        int eventId = eventDAO.create(new Event("Boxing", "Pads and bags", LocalDate.now().plusDays(2).atStartOfDay(),
+                LocalTime.of(17, 0), 60, CAPACITY, Location.Aarhus, "Instructor", 100, "ACTIVE", null)).getEventId();
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add(addUser());
+        }
+
+        // Watches the stored registrations while the signups run
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger mostSeen = new AtomicInteger();
+        Thread watcher = new Thread(() -> {
+            while (running.get()) {
+                mostSeen.accumulateAndGet((int) countStored(eventId), Math::max);
+            }
+        });
+        watcher.start();
+
+        Map<RegistrationResult, LongAdder> results = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(USERS);
+        try {
+            List<Future<?>> signups = new ArrayList<>();
+            for (int userId : userIds) {
+                signups.add(pool.submit(() -> {
+                    start.await();
+                    RegistrationResult result = registrationDAO.register(userId, eventId);
+                    results.computeIfAbsent(result, r -> new LongAdder()).increment();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> signup : signups) {
+                signup.get(); // rethrows a failed signup
+            }
+        } finally {
+            pool.shutdown();
+            running.set(false);
+            watcher.join();
+        }
+
+        assertEquals(CAPACITY, results.get(RegistrationResult.ACCEPTED).sum());
+        assertEquals(USERS - CAPACITY, results.get(RegistrationResult.FULL).sum());
+        assertTrue(mostSeen.get() <= CAPACITY, "saw " + mostSeen.get() + " registrations for " + CAPACITY + " seats");
+        assertEquals(CAPACITY, countStored(eventId));
+        assertEquals(CAPACITY, registrationDAO.getCount(eventId));
+    }
+
+    private static long countStored(int eventId) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return ((Number) em.createNativeQuery("SELECT COUNT(*) FROM user_events WHERE event_id = ?1")
+                    .setParameter(1, eventId)
+                    .getSingleResult()).longValue();
+        } finally {
+            em.close();
+        }
+    }
+
+    // The no-arg constructor, the password constructors would BCrypt
+    private static int addUser() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            User user = new User();
+            user.setName("concurrency-test-user-" + userNumber.incrementAndGet());
+            user.setPassword("not-a-hash");
+            em.persist(user);
+            em.getTransaction().commit();
+            return user.getId();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package app.dao;
+
+import app.config.HibernateConfig;
+import app.model.Event;
+import app.model.Location;
+import app.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The waitlist against a Testcontainers Postgres (needs Docker)
+class RegistrationDAOWaitlistTest {
+    private static final AtomicInteger userNumber = new AtomicInteger();
+
+    private static EntityManagerFactory emf;
+    private static EventDAO eventDAO;
+    private static RegistrationDAO registrationDAO;
+
+    @BeforeAll
+    static void setUp() {
+        emf = HibernateConfig.getEntityManagerFactoryForTest();
+        eventDAO = new EventDAO(emf);
+        registrationDAO = new RegistrationDAO(emf);
+    }
+
+    @Test
+    void raisedCapacityGoesToTheWaitlistFirst() {
+        Event event = eventDAO.create(new Event("Spinning", "Intervals", LocalDate.now().plusDays(3).atStartOfDay(),
+                LocalTime.of(18, 0), 45, 1, Location.Aarhus, "Instructor", 80, "ACTIVE", null));
+        int eventId = event.getEventId();
+        int seated = addUser();
+        int first = addUser();
+        int second = addUser();
+        int third = addUser();
+
+        assertEquals(RegistrationResult.ACCEPTED, registrationDAO.register(seated, eventId));
+        assertEquals(RegistrationResult.WAITLISTED, registrationDAO.registerOrWaitlist(first, eventId));
+        assertEquals(RegistrationResult.WAITLISTED, registrationDAO.registerOrWaitlist(second, eventId));
+
+        event.setCapacity(2);
+        eventDAO.update(event);
+
+        assertEquals(List.of(seated, first), registeredIds(eventId));
+        assertEquals(2L, registrationDAO.getCount(eventId));
+        // The one seat left went to the queue, a newcomer doesn't get past it
+        assertEquals(RegistrationResult.FULL, registrationDAO.register(third, eventId));
+
+        event.setCapacity(5);
+        eventDAO.update(event);
+
+        assertEquals(List.of(seated, first, second), registeredIds(eventId));
+        assertEquals(3L, registrationDAO.getCount(eventId));
+        assertEquals(RegistrationResult.ACCEPTED, registrationDAO.register(third, eventId));
+    }
+
+    // Like PUT /api/events/{id}: inside a request the event is loaded and changed in the shared EntityManager
+    // before update() sees it, so update() must compare with the stored capacity, not the managed one
+    @Test
+    void raisedCapacityInARequestGoesToTheWaitlist() {
+        int eventId = eventDAO.create(new Event("Rowing", "Endurance", LocalDate.now().plusDays(4).atStartOfDay(),
+                LocalTime.of(7, 0), 60, 1, Location.Aarhus, "Instructor", 90, "ACTIVE", null)).getEventId();
+        int seated = addUser();
+        int waiting = addUser();
+        assertEquals(RegistrationResult.ACCEPTED, registrationDAO.register(seated, eventId));
+        assertEquals(RegistrationResult.WAITLISTED, registrationDAO.registerOrWaitlist(waiting, eventId));
+
+        UnitOfWork.begin(emf);
+        boolean success = false;
+        try {
+            Event event = eventDAO.getEventById(eventId);
+            event.setCapacity(2);
+            eventDAO.update(event);
+            success = true;
+        } finally {
+            UnitOfWork.end(success);
+        }
+
+        assertEquals(List.of(seated, waiting), registeredIds(eventId));
+        assertEquals(2L, registrationDAO.getCount(eventId));
+    }
+
+    private static List<Integer> registeredIds(int eventId) {
+        return eventDAO.getRegistrationsForEventById(eventId).stream().map(User::getId).sorted().toList();
+    }
+
+    // The no-arg constructor, the password constructors would BCrypt
+    private static int addUser() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            User user = new User();
+            user.setName("waitlist-test-user-" + userNumber.incrementAndGet());
+            user.setPassword("not-a-hash");
+            em.persist(user);
+            em.getTransaction().commit();
+            return user.getId();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package app.dao;
+
+import app.config.HibernateConfig;
+import app.dto.UserDTO;
+import app.exceptions.EntityNotFoundException;
+import app.model.Role;
+import app.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static app.testutils.QueryCounts.expectStatementsAtTwoSizes;
+
+// Every UserDAO finder runs a fixed number of statements, however many users there are
+class UserDAOQueryCountTest {
+    private static final int MORE_ROWS = 25;
+    private static final String ROLE = "user";
+    private static final String PASSWORD = "secret";
+    private static final AtomicInteger userNumber = new AtomicInteger();
+
+    private static EntityManagerFactory emf;
+    private static UserDAO userDAO;
+    private static User loginUser;
+
+    @BeforeAll
+    static void setUp() {
+        emf = HibernateConfig.getEntityManagerFactoryForTest();
+        userDAO = new UserDAO(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            if (em.find(Role.class, ROLE) == null) {
+                em.persist(new Role(ROLE));
+            }
+            loginUser = new User("user-dao-login", PASSWORD); // hashed with the current cost, so no rehash on login
+            loginUser.getRoles().add(em.getReference(Role.class, ROLE));
+            em.persist(loginUser);
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+        addUsers(3);
+    }
+
+    @Test
+    void getAlleUser() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addUsers(MORE_ROWS),
+                () -> userDAO.getAlleUser().forEach(UserDTO::new));
+    }
+
+    @Test
+    void getUsersPage() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addUsers(MORE_ROWS),
+                () -> userDAO.getUsersPage(0, 1000).forEach(UserDTO::new));
+    }
+
+    @Test
+    void getUserById() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addUsers(MORE_ROWS),
+                () -> new UserDTO(userDAO.getUserById(loginUser.getId())));
+    }
+
+    // The roles come with the user (the token needs them), not one query later
+    @Test
+    void verifyUser() {
+        expectStatementsAtTwoSizes(emf, 1, () -> addUsers(MORE_ROWS),
+                () -> login().getRolesAsStrings());
+    }
+
+    @Test
+    void getExistingNames() {
+        List<String> names = new ArrayList<>(addUsers(3));
+        expectStatementsAtTwoSizes(emf, 1, () -> names.addAll(addUsers(MORE_ROWS)),
+                () -> userDAO.getExistingNames(names));
+    }
+
+    private static User login() {
+        try {
+            return userDAO.verifyUser(loginUser.getName(), PASSWORD);
+        } catch (EntityNotFoundException e) {
+            throw new AssertionError("The test user couldn't log in", e);
+        }
+    }
+
+    // Users are made with the no-arg constructor, the password constructors would BCrypt every one of them
+    private static List<String> addUsers(int count) {
+        List<String> names = new ArrayList<>();
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Role role = em.getReference(Role.class, ROLE);
+            for (int i = 0; i < count; i++) {
+                User user = new User();
+                user.setName("user-dao-test-" + userNumber.incrementAndGet());
+                user.setPassword("not-a-hash");
+                user.getRoles().add(role);
+                em.persist(user);
+                names.add(user.getName());
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+        return names;
+    }
+}
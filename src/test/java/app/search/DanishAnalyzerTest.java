@@ -0,0 +1,52 @@
+package app.search;
+
+import app.search.DanishAnalyzer.QueryTerm;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DanishAnalyzerTest {
+
+    @Test
+    void wordsAreFolded() {
+        assertEquals(List.of("cafe", "århus", "æble", "ø"), DanishAnalyzer.words("Café, AARHUS! äble ö"));
+    }
+
+    // What Postgres gets: its tsvector column is built from the text as written
+    @Test
+    void plainWordsAreOnlyLowerCased() {
+        assertEquals(List.of("café", "aarhus", "2024"), DanishAnalyzer.plainWords("Café Aarhus-2024"));
+    }
+
+    @Test
+    void termsDropStopWordsAndStem() {
+        assertEquals(List.of("kurs", "århus", "kurs"), DanishAnalyzer.terms("Kurserne i Aarhus og kurset"));
+        assertEquals(List.of(), DanishAnalyzer.terms(null));
+    }
+
+    @Test
+    void stemKeepsThreeLetters() {
+        assertEquals("hel", DanishAnalyzer.stem("hele"));
+        assertEquals("ole", DanishAnalyzer.stem("ole"));
+        assertEquals("yoga", DanishAnalyzer.stem("yoga"));
+    }
+
+    @Test
+    void lastWordIsAPrefixUnlessFollowedBySpace() {
+        assertEquals(List.of(new QueryTerm("yoga", false, false), new QueryTerm("beg", true, false)),
+                DanishAnalyzer.queryTerms("yoga beg"));
+        assertEquals(List.of(new QueryTerm("yoga", false, false), new QueryTerm("begynder", false, false)),
+                DanishAnalyzer.queryTerms("yoga begyndere "));
+    }
+
+    // A trailing stop word may be the start of a real word, so it stays, but as optional
+    @Test
+    void trailingStopWordIsOptional() {
+        assertEquals(List.of(new QueryTerm("yoga", false, false), new QueryTerm("i", true, true)),
+                DanishAnalyzer.queryTerms("yoga i"));
+        assertEquals(List.of(new QueryTerm("yoga", false, false)), DanishAnalyzer.queryTerms("yoga i "));
+        assertEquals(List.of(new QueryTerm("yoga", false, false)), DanishAnalyzer.queryTerms("i yoga "));
+    }
+}
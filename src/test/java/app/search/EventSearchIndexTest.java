@@ -0,0 +1,99 @@
+package app.search;
+
+import app.dto.EventDTO;
+import app.dto.EventSearchResultDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EventSearchIndexTest {
+    private EventSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new EventSearchIndex();
+        index.loaded(List.of(
+                event(1, "Yoga for begyndere", "Anna", "Rolig yoga i Aarhus"),
+                event(2, "Yoga flow", "Bo", "Hold for øvede"),
+                event(3, "Salsa for begyndere", "Carla", "Hold med dans"),
+                event(4, "Meditation", "Anna", "Hold i stilhed"),
+                event(5, "Café-løb", "Dorte", "Hold på 5 km")));
+    }
+
+    @Test
+    void everyWordMustMatch() {
+        assertEquals(List.of(1), ids("yoga begyndere "));
+        assertEquals(List.of(), ids("yoga salsa "));
+    }
+
+    @Test
+    void lastWordMatchesAsPrefix() {
+        assertEquals(Set.of(1, 3), Set.copyOf(ids("begy")));
+        assertEquals(List.of(), ids("begy "));
+    }
+
+    // "hold" is in four events and "salsa" in one: either order, the rare term decides the candidates
+    // and the common one still has to match every one of them
+    @Test
+    void rarestTermPicksTheCandidates() {
+        assertEquals(List.of(3), ids("hold salsa "));
+        assertEquals(List.of(3), ids("salsa hold "));
+        assertEquals(List.of(), ids("salsa øvede "));
+    }
+
+    @Test
+    void stopWordsAreIgnored() {
+        assertEquals(List.of(1), ids("yoga i aarhus "));
+        // A trailing stop word doesn't fail the query when nothing starts with it
+        assertEquals(Set.of(1, 2), Set.copyOf(ids("yoga i")));
+        assertEquals(Set.of(1, 2), Set.copyOf(ids("yoga og")));
+        // ... but it still works as a prefix when something does
+        assertEquals(List.of(4), ids("anna med"));
+    }
+
+    @Test
+    void accentsAndAaAreFolded() {
+        assertEquals(List.of(1), ids("århus"));
+        assertEquals(List.of(1), ids("AARHUS"));
+        assertEquals(List.of(5), ids("cafe"));
+    }
+
+    @Test
+    void titleMatchRanksAboveDescriptionMatch() {
+        index.changed(List.of(event(6, "Stille dans", "Eva", "Yoga og dans")), Set.of());
+        assertEquals(List.of(1, 2, 6), ids("yoga "));
+    }
+
+    @Test
+    void changedEventsAreReindexed() {
+        index.changed(List.of(event(2, "Pilates flow", "Bo", "Hold for øvede")), Set.of(3));
+        assertEquals(List.of(1), ids("yoga "));
+        assertEquals(List.of(2), ids("pilates"));
+        assertEquals(List.of(), ids("salsa"));
+        assertEquals(3, index.search("hold ", 10).getTotal());
+    }
+
+    @Test
+    void limitKeepsTheBestButCountsAll() {
+        EventSearchResultDTO result = index.search("hold", 2);
+        assertEquals(4, result.getTotal());
+        assertEquals(2, result.getEvents().size());
+    }
+
+    private List<Integer> ids(String query) {
+        return index.search(query, 10).getEvents().stream().map(EventDTO::getEventId).toList();
+    }
+
+    private static EventDTO event(int id, String title, String instructor, String description) {
+        EventDTO event = new EventDTO();
+        event.setEventId(id);
+        event.setTitle(title);
+        event.setInstructor(instructor);
+        event.setDescription(description);
+        return event;
+    }
+}
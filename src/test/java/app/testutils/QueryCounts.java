@@ -0,0 +1,37 @@
+package app.testutils;
+
+import app.metrics.QueryCounter;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+
+Statement count assertions for the DAO tests, on top of QueryCounter (the session factory's
+StatementInspector). A finder should run the same number of statements however many rows it returns,
+so expectStatementsAtTwoSizes checks the count, lets the test add data, and checks it again. The
+second-level and query caches are emptied before each count, they would otherwise hide the SQL.
+
+*/
+public class QueryCounts {
+
+    private QueryCounts() {
+    }
+
+    public static void expectStatements(long expected, Runnable action) {
+        assertEquals(expected, QueryCounter.count(action), "SQL statements");
+    }
+
+    public static void expectStatementsAtTwoSizes(EntityManagerFactory emf, long expected, Runnable addData, Runnable action) {
+        evictCaches(emf);
+        assertEquals(expected, QueryCounter.count(action), "SQL statements before adding data");
+        addData.run();
+        evictCaches(emf);
+        assertEquals(expected, QueryCounter.count(action), "SQL statements after adding data");
+    }
+
+    public static void evictCaches(EntityManagerFactory emf) {
+        emf.unwrap(SessionFactory.class).getCache().evictAllRegions();
+    }
+}